@@ -0,0 +1,94 @@
+package com.reactivespring.dataset;
+
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes generated documents in unordered insertMany batches of dataset.batch-size
+ * (10K by default), dataset.concurrency (4) batches at a time. Documents go
+ * through the template's converter, so they are stored exactly as the service's
+ * repositories would store them. Every batch has its own random seeded from
+ * dataset.seed and the batch number, so the same settings give the same dataset
+ * however the batches interleave.
+ */
+public class BulkLoader {
+
+    public interface Generator<T> {
+
+        // index runs from 0 to count - 1
+        T generate(long index, SplittableRandom random);
+    }
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private int batchSize = DatasetSettings.intValue("batch-size", 10_000);
+    private int concurrency = DatasetSettings.intValue("concurrency", 4);
+    private long seed = DatasetSettings.count("seed", 42);
+
+    public BulkLoader(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    // replaces the collection of type with count generated documents
+    public <T> long load(Class<T> type, long count, Generator<T> generator) {
+        var collectionName = reactiveMongoTemplate.getCollectionName(type);
+        var converter = reactiveMongoTemplate.getConverter();
+        var batches = (count + batchSize - 1) / batchSize;
+        var written = new AtomicLong();
+        var progressStep = Math.max(batchSize, count / 20);
+        var started = System.nanoTime();
+
+        reactiveMongoTemplate.dropCollection(type).block();
+        System.out.printf("Writing %,d documents to %s%n", count, collectionName);
+
+        var total = Flux.range(0, Math.toIntExact(batches))
+                .flatMap(batch -> Mono.fromCallable(() -> {
+                            var random = new SplittableRandom(seed * 31 + batch);
+                            var first = (long) batch * batchSize;
+                            var last = Math.min(count, first + batchSize);
+                            var documents = new ArrayList<Document>((int) (last - first));
+                            for (var index = first; index < last; index++) {
+                                var document = new Document();
+                                converter.write(generator.generate(index, random), document);
+                                documents.add(document);
+                            }
+                            return documents;
+                        })
+                        .subscribeOn(Schedulers.parallel())
+                        .flatMap(documents -> reactiveMongoTemplate.getCollection(collectionName)
+                                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                                .map(result -> (long) documents.size())), concurrency)
+                .doOnNext(size -> {
+                    var before = written.getAndAdd(size);
+                    if ((before + size) / progressStep > before / progressStep) {
+                        System.out.printf("  %,d of %,d%n", before + size, count);
+                    }
+                })
+                .reduce(0L, Long::sum)
+                .block();
+
+        var seconds = (System.nanoTime() - started) / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("Wrote %,d documents to %s in %.1f s, %,.0f documents/s%n", total, collectionName, seconds, total / seconds);
+
+        // building the indexes once the documents are in is faster than maintaining them on every insert
+        ensureDeclaredIndexes(reactiveMongoTemplate, type);
+        return total;
+    }
+
+    // the indexes the type declares, as the service creates them with auto-index-creation
+    public static void ensureDeclaredIndexes(ReactiveMongoTemplate reactiveMongoTemplate, Class<?> type) {
+        var indexOps = reactiveMongoTemplate.indexOps(type);
+        IndexResolver.create(reactiveMongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(type)
+                .forEach(index -> indexOps.ensureIndex(index).block());
+    }
+}
@@ -0,0 +1,73 @@
+package com.reactivespring.dataset;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.Storage;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * The MongoDB the dataset is written to and benchmarked against. That is
+ * dataset.mongo.uri when set, otherwise an embedded mongod (dataset.mongo.version,
+ * 4.0 by default) that keeps its files in dataset.dir, so a dataset generated once
+ * can be benchmarked any number of times. Closing it stops the embedded mongod.
+ */
+public class DatasetMongo implements AutoCloseable {
+
+    private MongodExecutable mongodExecutable;
+    private MongoClient mongoClient;
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private DatasetMongo(MongodExecutable mongodExecutable, String connectionString) {
+        this.mongodExecutable = mongodExecutable;
+        this.mongoClient = MongoClients.create(connectionString);
+        this.reactiveMongoTemplate = new ReactiveMongoTemplate(mongoClient, DatasetSettings.string("database", "dataset"));
+    }
+
+    public static DatasetMongo start() throws IOException {
+        var uri = DatasetSettings.string("mongo.uri", null);
+        if (uri != null) {
+            System.out.println("Using the MongoDB at " + uri);
+            return new DatasetMongo(null, uri);
+        }
+
+        var dbDir = Paths.get(DatasetSettings.string("dir", "build/dataset/mongo")).toAbsolutePath();
+        Files.createDirectories(dbDir);
+        var port = Network.getFreeServerPort();
+        var version = Version.Main.valueOf("V" + DatasetSettings.string("mongo.version", "4.0").replace('.', '_'));
+        var mongodExecutable = MongodStarter.getDefaultInstance().prepare(MongodConfig.builder()
+                .version(version)
+                .net(new Net(port, Network.localhostIsIPv6()))
+                .replication(new Storage(dbDir.toString(), null, 0))
+                .build());
+        mongodExecutable.start();
+        System.out.println("Started an embedded mongod " + version.asInDownloadPath() + " on port " + port + " with its files in " + dbDir);
+        return new DatasetMongo(mongodExecutable, "mongodb://localhost:" + port);
+    }
+
+    public ReactiveMongoTemplate reactiveMongoTemplate() {
+        return reactiveMongoTemplate;
+    }
+
+    // another database of the same MongoDB, for writes that must not touch the dataset
+    public ReactiveMongoTemplate reactiveMongoTemplate(String database) {
+        return new ReactiveMongoTemplate(mongoClient, database);
+    }
+
+    @Override
+    public void close() {
+        mongoClient.close();
+        if (mongodExecutable != null) {
+            mongodExecutable.stop();
+        }
+    }
+}
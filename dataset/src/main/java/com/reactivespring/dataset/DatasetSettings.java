@@ -0,0 +1,45 @@
+package com.reactivespring.dataset;
+
+/**
+ * Settings of the dataset tools, passed by Gradle as -Pdataset.<name>=<value>.
+ * Counts take a K, M or G suffix, so -Pdataset.reviews=100M works.
+ */
+public class DatasetSettings {
+
+    public static long count(String name, long defaultValue) {
+        var value = System.getProperty("dataset." + name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        value = value.trim().replace("_", "").toUpperCase();
+        var multiplier = 1L;
+        switch (value.charAt(value.length() - 1)) {
+            case 'K':
+                multiplier = 1_000L;
+                break;
+            case 'M':
+                multiplier = 1_000_000L;
+                break;
+            case 'G':
+                multiplier = 1_000_000_000L;
+                break;
+            default:
+                return Long.parseLong(value);
+        }
+        return Long.parseLong(value.substring(0, value.length() - 1)) * multiplier;
+    }
+
+    public static int intValue(String name, int defaultValue) {
+        return Math.toIntExact(count(name, defaultValue));
+    }
+
+    public static double doubleValue(String name, double defaultValue) {
+        var value = System.getProperty("dataset." + name);
+        return value == null || value.isBlank() ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    public static String string(String name, String defaultValue) {
+        var value = System.getProperty("dataset." + name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+}
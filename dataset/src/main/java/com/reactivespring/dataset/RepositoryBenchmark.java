@@ -0,0 +1,93 @@
+package com.reactivespring.dataset;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Runs repository calls and reports their latency and throughput, one line per
+ * run. A call is timed from subscription until its last document has arrived,
+ * dataset.benchmark.concurrency (8) calls at a time, after a tenth as many
+ * warm-up calls that are not counted. Throughput is in calls and in documents
+ * per second, the latter being what tells the scans apart.
+ */
+public class RepositoryBenchmark {
+
+    private static final String FORMAT = "%-34s %8s %10s %10s %10s %10s %10s %14s";
+
+    private int concurrency = DatasetSettings.intValue("benchmark.concurrency", 8);
+    private List<String> lines = new ArrayList<>();
+
+    public RepositoryBenchmark(String title) {
+        lines.add(title);
+        lines.add(String.format(FORMAT, "run", "calls", "calls/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "documents/s"));
+        lines.forEach(System.out::println);
+    }
+
+    // call gets the number of the call, to pick its arguments by; calls may run concurrently
+    public void run(String name, int calls, LongFunction<Publisher<?>> call) {
+        warmUp(calls, Math.max(1, calls / 10), call);
+
+        var latencies = new long[calls];
+        var documents = new AtomicLong();
+        var started = System.nanoTime();
+        Flux.range(0, calls)
+                .flatMap(index -> Mono.defer(() -> {
+                    var callStarted = System.nanoTime();
+                    return Flux.from(call.apply(index))
+                            .count()
+                            .doOnNext(count -> {
+                                latencies[index] = System.nanoTime() - callStarted;
+                                documents.addAndGet(count);
+                            });
+                }), concurrency)
+                .blockLast();
+        var seconds = (System.nanoTime() - started) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        Arrays.sort(latencies);
+        var line = String.format(FORMAT, name, calls,
+                String.format("%.1f", calls / seconds),
+                millis(percentile(latencies, 0.50)),
+                millis(percentile(latencies, 0.95)),
+                millis(percentile(latencies, 0.99)),
+                millis(latencies[latencies.length - 1]),
+                String.format("%,.0f", documents.get() / seconds));
+        lines.add(line);
+        System.out.println(line);
+    }
+
+    // writes the report to dataset.report-dir, build/reports/dataset by default
+    public void report(String fileName) throws IOException {
+        var reportDir = Paths.get(DatasetSettings.string("report-dir", "build/reports/dataset"));
+        Files.createDirectories(reportDir);
+        Path report = reportDir.resolve(fileName);
+        Files.write(report, lines);
+        System.out.println("Report written to " + report.toAbsolutePath());
+    }
+
+    // numbered after the timed calls, so they do not warm up the timed calls' arguments
+    private void warmUp(int first, int calls, LongFunction<Publisher<?>> call) {
+        Flux.range(first, calls)
+                .flatMap(index -> Flux.from(call.apply(index)).count(), concurrency)
+                .blockLast();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,38 @@
+package com.reactivespring.dataset;
+
+import java.util.SplittableRandom;
+
+/**
+ * Ranks 1..n drawn with a probability proportional to 1 / rank^exponent: a few
+ * movies get most of the reviews and lookups, a few actors most of the parts.
+ * Sampled by inverting the continuous power law, so a draw costs the same at
+ * any n; the discrete distribution is approximated closely enough for load.
+ */
+public class Zipf {
+
+    private long n;
+    private double exponent;
+    private double upper;
+
+    public Zipf(long n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be at least 1, was " + n);
+        }
+        this.n = n;
+        this.exponent = exponent;
+        this.upper = isHarmonic() ? Math.log(n + 1.0) : Math.pow(n + 1.0, 1 - exponent) - 1;
+    }
+
+    public long next(SplittableRandom random) {
+        var u = random.nextDouble();
+        // x is distributed as x^-exponent on [1, n + 1), its floor is the rank
+        var x = isHarmonic()
+                ? Math.exp(u * upper)
+                : Math.pow(u * upper + 1, 1 / (1 - exponent));
+        return Math.max(1, Math.min(n, (long) x));
+    }
+
+    private boolean isHarmonic() {
+        return Math.abs(exponent - 1) < 1e-9;
+    }
+}
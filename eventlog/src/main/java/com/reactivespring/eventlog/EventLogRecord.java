@@ -0,0 +1,31 @@
+package com.reactivespring.eventlog;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One record of a MappedEventLog. The payload is a read-only slice of the mapped
+ * segment, valid for as long as the record is referenced.
+ */
+public class EventLogRecord {
+
+    private final long offset;
+    private final ByteBuffer payload;
+
+    public EventLogRecord(long offset, ByteBuffer payload) {
+        this.offset = offset;
+        this.payload = payload;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return payload.remaining();
+    }
+
+    // a fresh view on every call, so readers cannot move each other's position
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+}
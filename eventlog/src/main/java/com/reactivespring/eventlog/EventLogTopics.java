@@ -0,0 +1,112 @@
+package com.reactivespring.eventlog;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The events of a JsonEventLog for subscribers that want the events of one key
+ * only, a movie, a year or a cast member. One tail of the log routes every new
+ * event to the topics of its keys, so the live fan-out costs a map lookup per key
+ * of the event, not a filter per subscriber. A topic exists only while it has
+ * subscribers.
+ * A subscriber starting at an offset reads the history from there, filtered by
+ * its key, and then switches to its topic: the topic is joined before the history
+ * is read, and the events read as history are skipped when they arrive live.
+ * Live events wait in a buffer of bufferSize per subscriber, the oldest are
+ * dropped once it is full.
+ */
+@Slf4j
+public class EventLogTopics<K, T> implements Closeable {
+
+    private JsonEventLog<T> eventLog;
+    private Function<T, Collection<K>> keys;
+    private int bufferSize;
+    private Map<K, Topic<T>> topics = new ConcurrentHashMap<>();
+    private Disposable routing;
+
+    // keys returns the keys an event belongs to, without duplicates
+    public EventLogTopics(JsonEventLog<T> eventLog, Function<T, Collection<K>> keys, int bufferSize) {
+        this.eventLog = eventLog;
+        this.keys = keys;
+        this.bufferSize = bufferSize;
+    }
+
+    // routes the events appended from now on
+    public void start() {
+        routing = eventLog.tail(eventLog.endOffset())
+                .subscribe(this::route, ex -> log.error("Routing events of the event log to topics failed", ex));
+    }
+
+    @Override
+    public void close() {
+        if (routing != null) {
+            routing.dispose();
+        }
+    }
+
+    // the key's events from fromOffset on, then its live ones
+    public Flux<LoggedEvent<T>> subscribe(K key, long fromOffset) {
+        return subscribe(key, fromOffset - 1, fromOffset);
+    }
+
+    // the key's events after the one at offset, as a reconnecting client asks for with Last-Event-ID
+    public Flux<LoggedEvent<T>> subscribeAfter(K key, long offset) {
+        return subscribe(key, offset, offset);
+    }
+
+    private Flux<LoggedEvent<T>> subscribe(K key, long skipUpTo, long readFrom) {
+        return Flux.defer(() -> {
+            var live = joinTopic(key)
+                    .onBackpressureBuffer(bufferSize,
+                            dropped -> log.debug("Dropped the event at {} for a slow subscriber", dropped.getOffset()),
+                            BufferOverflowStrategy.DROP_OLDEST)
+                    .publish();
+            // joined before the history is read up to the end of the log, so no event falls in between
+            var joined = live.connect();
+            var replayedUpTo = new AtomicLong(skipUpTo);
+            var history = eventLog.read(readFrom)
+                    .filter(loggedEvent -> loggedEvent.getOffset() > replayedUpTo.get())
+                    .doOnNext(loggedEvent -> replayedUpTo.set(loggedEvent.getOffset()))
+                    .filter(loggedEvent -> keys.apply(loggedEvent.getEvent()).contains(key));
+            return Flux.concat(history, live.filter(loggedEvent -> loggedEvent.getOffset() > replayedUpTo.get()))
+                    .doFinally(signalType -> joined.dispose());
+        });
+    }
+
+    private Flux<LoggedEvent<T>> joinTopic(K key) {
+        var topic = topics.compute(key, (k, existing) -> {
+            var joined = existing == null ? new Topic<T>() : existing;
+            joined.subscribers++;
+            return joined;
+        });
+        return topic.sink.asFlux()
+                .doFinally(signalType -> topics.computeIfPresent(key, (k, existing) ->
+                        --existing.subscribers == 0 ? null : existing));
+    }
+
+    // called from the routing tail only, so the topic sinks are never emitted to concurrently
+    private void route(LoggedEvent<T> loggedEvent) {
+        for (var key : keys.apply(loggedEvent.getEvent())) {
+            var topic = topics.get(key);
+            if (topic != null) {
+                topic.sink.tryEmitNext(loggedEvent);
+            }
+        }
+    }
+
+    // subscribers is only read and written inside the map's compute functions
+    private static class Topic<T> {
+        private final Sinks.Many<LoggedEvent<T>> sink = Sinks.many().multicast().directBestEffort();
+        private int subscribers;
+    }
+}
@@ -0,0 +1,136 @@
+package com.reactivespring.eventlog;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores events of one type as JSON in a MappedEventLog. Events are parsed
+ * straight from the mapped segments, without copying the records first.
+ * appendLater hands the event to the log's own appender thread, for callers on
+ * an event loop: an append may force a segment to disk, delete old segments or
+ * fault in pages. At most appendQueueSize events wait for it; events that cannot
+ * be appended are logged and counted in eventlog.append.failed, tagged with the
+ * event type, and never fail the caller.
+ */
+@Slf4j
+public class JsonEventLog<T> implements Closeable {
+
+    private MappedEventLog eventLog;
+    private ObjectMapper objectMapper;
+    private Class<T> eventType;
+    private ThreadPoolExecutor appender;
+    private Counter appendFailed;
+
+    public JsonEventLog(MappedEventLog eventLog, ObjectMapper objectMapper, Class<T> eventType,
+                        MeterRegistry meterRegistry, int appendQueueSize) {
+        this.eventLog = eventLog;
+        this.objectMapper = objectMapper;
+        this.eventType = eventType;
+        this.appender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(appendQueueSize),
+                runnable -> {
+                    var thread = new Thread(runnable, "event-log-append-" + eventType.getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.appendFailed = Counter.builder("eventlog.append.failed")
+                .description("Events that could not be appended to the event log")
+                .tag("event", eventType.getSimpleName())
+                .register(meterRegistry);
+    }
+
+    // appends on the appender thread, in the order of the calls
+    public void appendLater(T event) {
+        try {
+            appender.execute(() -> {
+                try {
+                    append(event);
+                } catch (RuntimeException ex) {
+                    appendFailed.increment();
+                    log.error("{} could not be appended to the event log", eventType.getSimpleName(), ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            appendFailed.increment();
+            log.error("{} dropped, {} events are waiting to be appended to the event log",
+                    eventType.getSimpleName(), appender.getQueue().size());
+        }
+    }
+
+    public long append(T event) {
+        try {
+            return eventLog.append(objectMapper.writeValueAsBytes(event));
+        } catch (JsonProcessingException ex) {
+            throw Exceptions.propagate(ex);
+        }
+    }
+
+    // the events from fromOffset on, then the live ones
+    public Flux<LoggedEvent<T>> tail(long fromOffset) {
+        return eventLog.tail(fromOffset).map(this::decode);
+    }
+
+    // the events after the one at offset, as a reconnecting client asks for with Last-Event-ID
+    public Flux<LoggedEvent<T>> tailAfter(long offset) {
+        return tail(offset).filter(loggedEvent -> loggedEvent.getOffset() > offset);
+    }
+
+    // the events from fromOffset up to the end of the log at subscription
+    public Flux<LoggedEvent<T>> read(long fromOffset) {
+        return eventLog.read(fromOffset).map(this::decode);
+    }
+
+    public boolean isValidOffset(long offset) {
+        return eventLog.isValidOffset(offset);
+    }
+
+    public long earliestOffset() {
+        return eventLog.earliestOffset();
+    }
+
+    // where the next event will be appended
+    public long endOffset() {
+        return eventLog.endOffset();
+    }
+
+    // the offset of the newest event, or the end of the log while it is empty
+    public long latestOffset() {
+        var lastOffset = eventLog.lastOffset();
+        return lastOffset < 0 ? eventLog.endOffset() : lastOffset;
+    }
+
+    // appends the events still waiting, for a few seconds at most, then closes the log
+    @Override
+    public void close() {
+        appender.shutdown();
+        try {
+            if (!appender.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("{} events were not appended to the event log before it closed", appender.shutdownNow().size());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        eventLog.close();
+    }
+
+    private LoggedEvent<T> decode(EventLogRecord record) {
+        try {
+            return new LoggedEvent<>(record.getOffset(),
+                    objectMapper.readValue(new ByteBufferBackedInputStream(record.getPayload()), eventType));
+        } catch (IOException ex) {
+            throw Exceptions.propagate(ex);
+        }
+    }
+}
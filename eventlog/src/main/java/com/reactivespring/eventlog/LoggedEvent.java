@@ -0,0 +1,15 @@
+package com.reactivespring.eventlog;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * An event read back from a JsonEventLog, with the offset to resume after.
+ */
+@Data
+@AllArgsConstructor
+public class LoggedEvent<T> {
+
+    private long offset;
+    private T event;
+}
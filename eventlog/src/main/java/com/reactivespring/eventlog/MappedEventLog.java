@@ -0,0 +1,350 @@
+package com.reactivespring.eventlog;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of opaque records, stored in memory-mapped segment files
+ * named after the offset of their first byte. A record is its length, a CRC32 of
+ * its payload and the payload, and its offset is its position in the whole log.
+ * The length is written last, so a record cut short by a crash reads as the end
+ * of the log. The active segment is forced to disk every flush interval, and
+ * closed segments are deleted once the log is larger than retentionBytes or they
+ * are older than retentionAge.
+ * Records are read as slices of the mapped segments, without copying them to the
+ * heap, so the heap does not grow with the history the log keeps.
+ */
+@Slf4j
+public class MappedEventLog implements Closeable {
+
+    // length and CRC32 of the payload
+    static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final long retentionBytes;
+    private final Duration retentionAge;
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // signals every append to the tailing readers
+    private final Sinks.Many<Long> appends = Sinks.many().multicast().directBestEffort();
+    private final ScheduledExecutorService flusher;
+
+    // guarded by this
+    private Segment active;
+    private volatile long endOffset;
+    private volatile long lastOffset = -1;
+
+    public MappedEventLog(Path dir, int segmentSize, Duration flushInterval,
+                          long retentionBytes, Duration retentionAge) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.retentionBytes = retentionBytes;
+        this.retentionAge = retentionAge;
+
+        Files.createDirectories(dir);
+        recover();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "event-log-flush-" + dir.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        var flushMillis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends one record and returns its offset. The record is visible to readers
+     * once this returns, and durable after the next flush.
+     */
+    public synchronized long append(byte[] payload) {
+        if (payload.length == 0 || payload.length > segmentSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("Event log records must be 1 to " + (segmentSize - HEADER_SIZE)
+                    + " bytes, got " + payload.length);
+        }
+        if (active.position + HEADER_SIZE + payload.length > active.capacity) {
+            roll();
+        }
+
+        var position = active.position;
+        var offset = active.baseOffset + position;
+        var crc = new CRC32();
+        crc.update(payload);
+
+        var buffer = active.buffer;
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, payload.length);
+
+        active.position = position + HEADER_SIZE + payload.length;
+        active.lastAppendMillis = System.currentTimeMillis();
+        lastOffset = offset;
+        endOffset = offset + HEADER_SIZE + payload.length;
+        appends.tryEmitNext(endOffset);
+        return offset;
+    }
+
+    /**
+     * The records from fromOffset on, followed by every record appended later.
+     * An offset older than the retained history starts at the oldest record.
+     * Readers pull the records from the mapped segments at their own pace, so a
+     * slow reader costs no heap.
+     */
+    public Flux<EventLogRecord> tail(long fromOffset) {
+        return Flux.defer(() -> {
+            var position = new AtomicLong(fromOffset);
+            // subscribed to before the first read, so no append goes unnoticed
+            return Flux.merge(appends.asFlux(), Mono.just(fromOffset))
+                    .onBackpressureLatest()
+                    // reads fault in pages of the mapped files, keep them off the appending thread
+                    .publishOn(Schedulers.boundedElastic(), 1)
+                    .concatMap(signal -> readUpTo(position, endOffset), 1);
+        });
+    }
+
+    /**
+     * The records from fromOffset up to the end of the log at subscription, without
+     * the ones appended later.
+     */
+    public Flux<EventLogRecord> read(long fromOffset) {
+        return Flux.defer(() -> readUpTo(new AtomicLong(fromOffset), endOffset))
+                // reads fault in pages of the mapped files, keep them off the subscribing thread
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Whether fromOffset can be passed to tail: the start of a retained record,
+     * the end of the log, or an offset that retention has already removed.
+     */
+    public boolean isValidOffset(long fromOffset) {
+        var end = endOffset;
+        if (fromOffset < 0 || fromOffset > end) {
+            return false;
+        }
+        if (fromOffset == end || fromOffset < earliestOffset()) {
+            return true;
+        }
+        var entry = segments.floorEntry(fromOffset);
+        return entry != null && readRecord(entry.getValue(), fromOffset, true) != null;
+    }
+
+    public long earliestOffset() {
+        var first = segments.firstEntry();
+        return first == null ? endOffset : first.getKey();
+    }
+
+    // the offset of the newest record, -1 while the log is empty
+    public long lastOffset() {
+        return lastOffset;
+    }
+
+    public long endOffset() {
+        return endOffset;
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        synchronized (this) {
+            active.buffer.force();
+        }
+        appends.tryEmitComplete();
+    }
+
+    private Flux<EventLogRecord> readUpTo(AtomicLong position, long end) {
+        return Flux.generate(sink -> {
+            var record = next(position.get(), end);
+            if (record == null) {
+                sink.complete();
+                return;
+            }
+            position.set(record.getOffset() + HEADER_SIZE + record.getLength());
+            sink.next(record);
+        });
+    }
+
+    private EventLogRecord next(long offset, long end) {
+        var entry = segments.floorEntry(offset);
+        if (entry == null) {
+            // retention removed the segment, continue with the oldest one left
+            entry = segments.firstEntry();
+            if (entry == null) {
+                return null;
+            }
+            offset = entry.getKey();
+        }
+        if (offset >= end) {
+            return null;
+        }
+        return readRecord(entry.getValue(), offset, false);
+    }
+
+    private EventLogRecord readRecord(Segment segment, long offset, boolean verify) {
+        var position = (int) (offset - segment.baseOffset);
+        if (position + HEADER_SIZE > segment.capacity) {
+            return null;
+        }
+        // a duplicate shares the mapping but has its own position and limit
+        ByteBuffer buffer = segment.buffer.duplicate();
+        var length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER_SIZE + length > segment.capacity) {
+            return null;
+        }
+        buffer.position(position + HEADER_SIZE).limit(position + HEADER_SIZE + length);
+        var payload = buffer.slice().asReadOnlyBuffer();
+        if (verify && crc(payload) != buffer.getInt(position + 4)) {
+            return null;
+        }
+        return new EventLogRecord(offset, payload);
+    }
+
+    private static int crc(ByteBuffer payload) {
+        var crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private void roll() {
+        active.buffer.force();
+        var baseOffset = active.baseOffset + active.position;
+        try {
+            active = openSegment(baseOffset, segmentSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not create event log segment " + baseOffset + " in " + dir, ex);
+        }
+        segments.put(baseOffset, active);
+        applyRetention();
+    }
+
+    private void flush() {
+        try {
+            Segment segment;
+            synchronized (this) {
+                segment = active;
+            }
+            segment.buffer.force();
+            synchronized (this) {
+                applyRetention();
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Event log {} was not flushed : {}", dir, ex.getMessage());
+        }
+    }
+
+    // only closed segments are deleted, readers that still hold them keep their mapping
+    private void applyRetention() {
+        var totalBytes = segments.values().stream().mapToLong(segment -> segment.capacity).sum();
+        var expiredBefore = System.currentTimeMillis() - retentionAge.toMillis();
+        for (var segment : segments.values()) {
+            if (segment == active || (totalBytes <= retentionBytes && segment.lastAppendMillis >= expiredBefore)) {
+                break;
+            }
+            segments.remove(segment.baseOffset);
+            totalBytes -= segment.capacity;
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException ex) {
+                log.warn("Event log segment {} was not deleted : {}", segment.path, ex.getMessage());
+            }
+        }
+    }
+
+    // maps the existing segments, and finds the end of the log in the newest one
+    private void recover() throws IOException {
+        try (var files = Files.list(dir)) {
+            var segmentFiles = files
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted(Comparator.comparing(MappedEventLog::baseOffset))
+                    .collect(Collectors.toList());
+            for (var path : segmentFiles) {
+                var segment = openSegment(baseOffset(path), 0);
+                segment.lastAppendMillis = Files.getLastModifiedTime(path).toMillis();
+                segments.put(segment.baseOffset, segment);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            active = openSegment(0, segmentSize);
+            segments.put(0L, active);
+            endOffset = 0;
+            return;
+        }
+
+        active = segments.lastEntry().getValue();
+        var position = 0;
+        while (true) {
+            var record = readRecord(active, active.baseOffset + position, true);
+            if (record == null) {
+                break;
+            }
+            lastOffset = record.getOffset();
+            position += HEADER_SIZE + record.getLength();
+        }
+        if (position + HEADER_SIZE <= active.capacity) {
+            // drop the header of a record that was cut short
+            active.buffer.putInt(position, 0);
+        }
+        active.position = position;
+        endOffset = active.baseOffset + position;
+        log.info("Event log {} recovered, offsets {} to {}", dir, earliestOffset(), endOffset);
+    }
+
+    // size 0 maps an existing file at its own size
+    private Segment openSegment(long baseOffset, int size) throws IOException {
+        var path = dir.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            var capacity = size > 0 ? size : (int) channel.size();
+            // the mapping stays valid after the channel is closed
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new Segment(baseOffset, path, buffer, capacity);
+        }
+    }
+
+    private static long baseOffset(Path path) {
+        var fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class Segment {
+        private final long baseOffset;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        // written under the log's lock, read by the flusher
+        private volatile long lastAppendMillis = System.currentTimeMillis();
+        private int position;
+
+        private Segment(long baseOffset, Path path, MappedByteBuffer buffer, int capacity) {
+            this.baseOffset = baseOffset;
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+}
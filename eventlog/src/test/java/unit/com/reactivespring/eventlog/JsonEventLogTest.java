@@ -0,0 +1,42 @@
+package com.reactivespring.eventlog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonEventLogTest {
+
+    @TempDir
+    Path dir;
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private JsonEventLog<String> open() throws IOException {
+        var eventLog = new MappedEventLog(dir, 64, Duration.ofSeconds(1), 1024 * 1024, Duration.ofDays(1));
+        return new JsonEventLog<>(eventLog, new ObjectMapper(), String.class, meterRegistry, 16);
+    }
+
+    @Test
+    void appendLaterKeepsOrderAndCountsFailures() throws IOException {
+        var jsonEventLog = open();
+        jsonEventLog.appendLater("first");
+        // larger than a segment, so the append fails on the appender thread
+        jsonEventLog.appendLater("x".repeat(100));
+        jsonEventLog.appendLater("second");
+
+        StepVerifier.create(jsonEventLog.tail(jsonEventLog.earliestOffset()).map(LoggedEvent::getEvent))
+                .expectNext("first", "second")
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        assertEquals(1.0, meterRegistry.counter("eventlog.append.failed", "event", "String").count());
+        jsonEventLog.close();
+    }
+}
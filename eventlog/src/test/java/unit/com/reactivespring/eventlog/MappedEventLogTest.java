@@ -0,0 +1,106 @@
+package com.reactivespring.eventlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedEventLogTest {
+
+    @TempDir
+    Path dir;
+
+    private MappedEventLog open(int segmentSize, long retentionBytes) throws IOException {
+        return new MappedEventLog(dir, segmentSize, Duration.ofSeconds(1), retentionBytes, Duration.ofDays(1));
+    }
+
+    private static byte[] event(int i) {
+        return ("event-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(EventLogRecord record) {
+        return StandardCharsets.UTF_8.decode(record.getPayload()).toString();
+    }
+
+    @Test
+    void tailReplaysThenFollows() throws IOException {
+        var eventLog = open(1024, 1024 * 1024);
+        eventLog.append(event(1));
+        var second = eventLog.append(event(2));
+
+        StepVerifier.create(eventLog.tail(second).map(MappedEventLogTest::text))
+                .expectNext("event-2")
+                .then(() -> eventLog.append(event(3)))
+                .expectNext("event-3")
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertTrue(eventLog.isValidOffset(second));
+        assertFalse(eventLog.isValidOffset(second + 1));
+        eventLog.close();
+    }
+
+    @Test
+    void readStopsAtTheEndOfTheLog() throws IOException {
+        var eventLog = open(1024, 1024 * 1024);
+        eventLog.append(event(1));
+        var second = eventLog.append(event(2));
+
+        StepVerifier.create(eventLog.read(second).map(MappedEventLogTest::text))
+                .expectNext("event-2")
+                .verifyComplete();
+        eventLog.close();
+    }
+
+    @Test
+    void rollsSegmentsAndRecovers() throws IOException {
+        // room for three 15 byte records per segment
+        var eventLog = open(50, 1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            eventLog.append(event(i));
+        }
+        var lastOffset = eventLog.lastOffset();
+        eventLog.close();
+        try (var files = Files.list(dir)) {
+            assertEquals(4, files.count());
+        }
+
+        var reopened = open(50, 1024 * 1024);
+        assertEquals(lastOffset, reopened.lastOffset());
+        reopened.append(event(10));
+
+        StepVerifier.create(reopened.tail(0).map(MappedEventLogTest::text).take(11).collect(Collectors.toList()))
+                .assertNext(events -> {
+                    assertEquals("event-0", events.get(0));
+                    assertEquals("event-10", events.get(10));
+                })
+                .verifyComplete();
+        reopened.close();
+    }
+
+    @Test
+    void retentionDeletesOldSegments() throws IOException {
+        // three segments of 50 bytes are over the limit
+        var eventLog = open(50, 144);
+        for (int i = 0; i < 10; i++) {
+            eventLog.append(event(i));
+        }
+
+        // offsets that retention removed start at the oldest record left
+        assertTrue(eventLog.earliestOffset() > 0);
+        StepVerifier.create(eventLog.tail(0).map(MappedEventLogTest::text).take(1))
+                .assertNext(event -> assertEquals("event-6", event))
+                .verifyComplete();
+        eventLog.close();
+    }
+}
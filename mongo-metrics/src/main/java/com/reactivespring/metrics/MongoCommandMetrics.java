@@ -0,0 +1,234 @@
+package com.reactivespring.metrics;
+
+import com.mongodb.RequestContext;
+import com.mongodb.ServerAddress;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mongo command and connection pool metrics, tagged with the repository method
+ * that issued each command (see RepositoryMethodContext). They complement the
+ * mongodb.driver.* meters Spring Boot registers, which cannot tell repositories
+ * apart.
+ * <ul>
+ *     <li>mongodb.repository.commands: command latency histogram by command, collection
+ *     and repository method. The getMore count per collection is this timer's count
+ *     for command=getMore.</li>
+ *     <li>mongodb.repository.documents: documents returned per command.</li>
+ *     <li>mongodb.repository.wait: time from subscribing to a repository call to its
+ *     first command being sent, i.e. server selection, pool checkout and encoding.</li>
+ *     <li>mongodb.pool.checkout.waiting and mongodb.pool.checkout.failures per server.</li>
+ * </ul>
+ * Commands slower than the slow command threshold are logged with their shape,
+ * the command with every value replaced by "?", never with the values themselves.
+ */
+@Slf4j
+public class MongoCommandMetrics implements CommandListener, ConnectionPoolListener {
+
+    private static final String NO_REPOSITORY_METHOD = "none";
+    private static final String NO_COLLECTION = "none";
+    // session and cluster bookkeeping the driver adds to every command
+    private static final Set<String> UNSHAPED_FIELDS = Set.of("$db", "lsid", "$clusterTime", "$readPreference", "txnNumber");
+
+    private MeterRegistry meterRegistry;
+    private Duration slowCommandThreshold;
+    private Map<Integer, StartedCommand> startedCommands = new ConcurrentHashMap<>();
+    private Map<ServerAddress, AtomicInteger> waitingCheckouts = new ConcurrentHashMap<>();
+
+    // a zero threshold turns the slow command log off
+    public MongoCommandMetrics(MeterRegistry meterRegistry, Duration slowCommandThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.slowCommandThreshold = slowCommandThreshold;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        var requestContext = event.getRequestContext();
+        var repositoryMethod = repositoryMethod(requestContext);
+        var collection = collection(event.getCommandName(), event.getCommand());
+
+        if (requestContext != null && requestContext.hasKey(RepositoryMethodContext.OPERATION_STARTED)
+                && !requestContext.hasKey(RepositoryMethodContext.COMMAND_SENT)) {
+            // only the operation's first command waited for it, later getMores reuse the cursor
+            requestContext.put(RepositoryMethodContext.COMMAND_SENT, true);
+            long started = requestContext.get(RepositoryMethodContext.OPERATION_STARTED);
+            Timer.builder("mongodb.repository.wait")
+                    .description("Time from a repository call to its first Mongo command being sent")
+                    .tags("repository.method", repositoryMethod)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        // the command document is only valid during this call, so the shape is taken now
+        var shape = slowCommandThreshold.isZero() || slowCommandThreshold.isNegative()
+                ? null
+                : shape(event.getCommandName(), event.getCommand());
+        startedCommands.put(event.getRequestId(), new StartedCommand(collection, repositoryMethod, shape));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        var startedCommand = startedCommands.remove(event.getRequestId());
+        if (startedCommand == null) {
+            return;
+        }
+        var elapsedNanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        record(event.getCommandName(), startedCommand, "success", elapsedNanos);
+
+        var documents = documentsReturned(event.getCommandName(), event.getResponse());
+        if (documents >= 0) {
+            DistributionSummary.builder("mongodb.repository.documents")
+                    .description("Documents returned per Mongo command")
+                    .tags("command", event.getCommandName(), "collection", startedCommand.collection,
+                            "repository.method", startedCommand.repositoryMethod)
+                    .register(meterRegistry)
+                    .record(documents);
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        var startedCommand = startedCommands.remove(event.getRequestId());
+        if (startedCommand == null) {
+            return;
+        }
+        record(event.getCommandName(), startedCommand, "failure", event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        waitingCheckouts(event.getServerId().getAddress()).incrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        waitingCheckouts(event.getConnectionId().getServerId().getAddress()).decrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        var serverAddress = event.getServerId().getAddress();
+        waitingCheckouts(serverAddress).decrementAndGet();
+        meterRegistry.counter("mongodb.pool.checkout.failures",
+                "server.address", serverAddress.toString(),
+                "reason", event.getReason().name().toLowerCase()).increment();
+    }
+
+    private AtomicInteger waitingCheckouts(ServerAddress serverAddress) {
+        return waitingCheckouts.computeIfAbsent(serverAddress, address -> {
+            var waiting = new AtomicInteger();
+            Gauge.builder("mongodb.pool.checkout.waiting", waiting, AtomicInteger::get)
+                    .description("Requests waiting for a pooled connection")
+                    .tags("server.address", address.toString())
+                    .register(meterRegistry);
+            return waiting;
+        });
+    }
+
+    private void record(String commandName, StartedCommand startedCommand, String status, long elapsedNanos) {
+        Timer.builder("mongodb.repository.commands")
+                .description("Mongo command latency by repository method")
+                .tags("command", commandName, "collection", startedCommand.collection,
+                        "repository.method", startedCommand.repositoryMethod, "status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        if (startedCommand.shape != null && elapsedNanos >= slowCommandThreshold.toNanos()) {
+            log.warn("Slow Mongo command {} on {} from {} took {} ms : {}", commandName, startedCommand.collection,
+                    startedCommand.repositoryMethod, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), startedCommand.shape);
+        }
+    }
+
+    private static String repositoryMethod(RequestContext requestContext) {
+        if (requestContext == null || !requestContext.hasKey(RepositoryMethodContext.REPOSITORY_METHOD)) {
+            return NO_REPOSITORY_METHOD;
+        }
+        return requestContext.get(RepositoryMethodContext.REPOSITORY_METHOD);
+    }
+
+    // find, insert, aggregate and most others name the collection as their own value
+    private static String collection(String commandName, BsonDocument command) {
+        var collection = command.get(commandName.equals("getMore") ? "collection" : commandName);
+        return collection != null && collection.isString() ? collection.asString().getValue() : NO_COLLECTION;
+    }
+
+    // -1 for commands that do not return documents
+    private static int documentsReturned(String commandName, BsonDocument response) {
+        var cursor = response.get("cursor");
+        if (cursor != null && cursor.isDocument()) {
+            var batch = cursor.asDocument().get(commandName.equals("getMore") ? "nextBatch" : "firstBatch");
+            return batch != null && batch.isArray() ? batch.asArray().size() : 0;
+        }
+        if (commandName.equals("findAndModify")) {
+            var value = response.get("value");
+            return value != null && value.isDocument() ? 1 : 0;
+        }
+        if (commandName.equals("count")) {
+            return 1;
+        }
+        return -1;
+    }
+
+    static String shape(String commandName, BsonDocument command) {
+        var shape = new BsonDocument();
+        command.forEach((field, value) -> {
+            if (field.equals(commandName)) {
+                shape.put(field, value);
+            } else if (!UNSHAPED_FIELDS.contains(field)) {
+                shape.put(field, shapeOf(value));
+            }
+        });
+        return shape.toJson();
+    }
+
+    // arrays keep the shape of their first element only, e.g. one inserted document
+    private static BsonValue shapeOf(BsonValue value) {
+        if (value.isDocument()) {
+            var shape = new BsonDocument();
+            value.asDocument().forEach((field, fieldValue) -> shape.put(field, shapeOf(fieldValue)));
+            return shape;
+        }
+        if (value.isArray()) {
+            var array = value.asArray();
+            return array.isEmpty() ? new BsonArray() : new BsonArray(List.of(shapeOf(array.get(0))));
+        }
+        return new BsonString("?");
+    }
+
+    private static class StartedCommand {
+        private final String collection;
+        private final String repositoryMethod;
+        private final String shape;
+
+        private StartedCommand(String collection, String repositoryMethod, String shape) {
+            this.collection = collection;
+            this.repositoryMethod = repositoryMethod;
+            this.shape = shape;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.reactivespring.metrics;
+
+import com.mongodb.RequestContext;
+import com.mongodb.reactivestreams.client.ReactiveContextProvider;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.reactivestreams.Subscriber;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Puts the repository method into the Reactor context of every Mono or Flux a
+ * Spring Data repository returns. The driver calls ContextProvider when a
+ * command's publisher is subscribed, and hands the result to the command
+ * listeners as the command's RequestContext, so MongoCommandMetrics knows which
+ * repository method issued the command. Commands issued without a repository,
+ * through ReactiveMongoTemplate directly, carry no method.
+ */
+public class RepositoryMethodContext implements BeanPostProcessor {
+
+    static final String REPOSITORY_METHOD = RepositoryMethodContext.class.getName() + ".method";
+    static final String OPERATION_STARTED = RepositoryMethodContext.class.getName() + ".started";
+    static final String COMMAND_SENT = RepositoryMethodContext.class.getName() + ".sent";
+
+    // the repository proxies are advised in place, so no second proxy class is needed
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Repository) || !(bean instanceof Advised) || ((Advised) bean).isFrozen()) {
+            return bean;
+        }
+        var repositoryName = Arrays.stream(bean.getClass().getInterfaces())
+                .filter(type -> type != Repository.class && Repository.class.isAssignableFrom(type))
+                .map(Class::getSimpleName)
+                .findFirst()
+                .orElse(beanName);
+        ((Advised) bean).addAdvice(0, (MethodInterceptor) invocation ->
+                withRepositoryMethod(invocation.proceed(), repositoryName + "." + invocation.getMethod().getName()));
+        return bean;
+    }
+
+    private static Object withRepositoryMethod(Object result, String repositoryMethod) {
+        if (result instanceof Mono) {
+            return ((Mono<?>) result).contextWrite(context -> context.put(REPOSITORY_METHOD, repositoryMethod));
+        }
+        if (result instanceof Flux) {
+            return ((Flux<?>) result).contextWrite(context -> context.put(REPOSITORY_METHOD, repositoryMethod));
+        }
+        return result;
+    }
+
+    /**
+     * The RequestContext of a driver operation: the repository method found in the
+     * subscriber's Reactor context, and when the operation was subscribed.
+     */
+    public static class ContextProvider implements ReactiveContextProvider {
+
+        @Override
+        public RequestContext getContext(Subscriber<?> subscriber) {
+            var requestContext = new MapRequestContext();
+            requestContext.put(OPERATION_STARTED, System.nanoTime());
+            if (subscriber instanceof CoreSubscriber) {
+                ((CoreSubscriber<?>) subscriber).currentContext().getOrEmpty(REPOSITORY_METHOD)
+                        .ifPresent(repositoryMethod -> requestContext.put(REPOSITORY_METHOD, repositoryMethod));
+            }
+            return requestContext;
+        }
+    }
+
+    private static class MapRequestContext implements RequestContext {
+
+        private final Map<Object, Object> entries = new ConcurrentHashMap<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(Object key) {
+            return (T) entries.get(key);
+        }
+
+        @Override
+        public boolean hasKey(Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            entries.put(key, value);
+        }
+
+        @Override
+        public void delete(Object key) {
+            entries.remove(key);
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public Stream<Map.Entry<Object, Object>> stream() {
+            return entries.entrySet().stream();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.reactivespring.metrics;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MongoCommandMetricsTest {
+
+    @Test
+    void shapeHidesValues() {
+        var command = BsonDocument.parse("{'find': 'review', 'filter': {'movieInfoId': 42, 'rating': {'$gte': 8.5}},"
+                + " 'sort': {'rating': -1}, 'limit': 10, '$db': 'local', 'lsid': {'id': 'abc'}}");
+
+        assertEquals(BsonDocument.parse("{'find': 'review', 'filter': {'movieInfoId': '?', 'rating': {'$gte': '?'}},"
+                        + " 'sort': {'rating': '?'}, 'limit': '?'}"),
+                BsonDocument.parse(MongoCommandMetrics.shape("find", command)));
+    }
+
+    @Test
+    void shapeKeepsOneArrayElement() {
+        var command = BsonDocument.parse("{'insert': 'review', 'documents': [{'comment': 'Awesome Movie'},"
+                + " {'comment': 'Excellent Movie'}], 'ordered': false}");
+
+        assertEquals(BsonDocument.parse("{'insert': 'review', 'documents': [{'comment': '?'}], 'ordered': '?'}"),
+                BsonDocument.parse(MongoCommandMetrics.shape("insert", command)));
+    }
+}
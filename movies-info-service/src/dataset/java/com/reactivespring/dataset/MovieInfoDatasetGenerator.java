@@ -0,0 +1,89 @@
+package com.reactivespring.dataset;
+
+import com.reactivespring.domain.MovieInfo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.SplittableRandom;
+
+/**
+ * Writes dataset.movieInfos MovieInfos with ids 1..movieInfos.
+ * <ul>
+ *     <li>Names are unique and derived from the id alone (name(id)), so the
+ *     benchmark can look movies up by name without reading them first.</li>
+ *     <li>Years run from 1920 to 2024, with more movies every year, as in real
+ *     catalogs.</li>
+ *     <li>Casts have 1 to 15 members, 5 on average, drawn from movieInfos / 4
+ *     actors by a Zipf distribution (dataset.cast-skew, 1.1): a few actors play
+ *     in thousands of movies, most in one or two.</li>
+ * </ul>
+ */
+public class MovieInfoDatasetGenerator {
+
+    static final int FIRST_YEAR = 1920;
+    static final int LAST_YEAR = 2024;
+
+    private static final String[] ADJECTIVES = {"Silent", "Dark", "Last", "Broken", "Golden", "Hidden", "Endless",
+            "Crimson", "Lost", "Frozen", "Wild", "Burning", "Hollow", "Distant", "Electric", "Quiet", "Savage",
+            "Eternal", "Forgotten", "Midnight"};
+    private static final String[] NOUNS = {"River", "Knight", "Harbor", "Empire", "Garden", "Storm", "Kingdom",
+            "Horizon", "Mirror", "Station", "Frontier", "Promise", "Shadow", "Voyage", "Signal", "Island", "Machine",
+            "Requiem", "Highway", "Orchard", "Witness", "Comet", "Fortress", "Letter", "Circus"};
+    private static final String[] FIRST_NAMES = {"Christian", "Michael", "Heath", "Scarlett", "Morgan", "Cate",
+            "Denzel", "Meryl", "Tom", "Viola", "Joaquin", "Tilda", "Idris", "Frances", "Mahershala", "Emma", "Oscar",
+            "Penelope", "Ken", "Lupita", "Gary", "Saoirse", "Javier", "Olivia", "Adam", "Zendaya", "Ryan", "Natalie",
+            "Samuel", "Julianne"};
+    private static final String[] LAST_NAMES = {"Bale", "Caine", "Ledger", "Johansson", "Freeman", "Blanchett",
+            "Washington", "Streep", "Hardy", "Davis", "Phoenix", "Swinton", "Elba", "McDormand", "Ali", "Stone",
+            "Isaac", "Cruz", "Watanabe", "Nyongo", "Oldman", "Ronan", "Bardem", "Colman", "Driver", "Coleman",
+            "Gosling", "Portman", "Jackson", "Moore", "Pattinson", "Weaver", "Chastain", "Kaluuya", "Yeoh"};
+
+    public static void main(String[] args) throws Exception {
+        var movieInfos = DatasetSettings.count("movieInfos", 100_000);
+        var actors = Math.max(100, movieInfos / 4);
+        var castPopularity = new Zipf(actors, DatasetSettings.doubleValue("cast-skew", 1.1));
+
+        try (var datasetMongo = DatasetMongo.start()) {
+            new BulkLoader(datasetMongo.reactiveMongoTemplate())
+                    .load(MovieInfo.class, movieInfos, (index, random) -> movieInfo(index + 1, random, castPopularity));
+        }
+    }
+
+    private static MovieInfo movieInfo(long id, SplittableRandom random, Zipf castPopularity) {
+        // the square root of a uniform number is more likely close to 1, so later years have more movies
+        var year = FIRST_YEAR + (int) ((LAST_YEAR - FIRST_YEAR + 1) * Math.sqrt(random.nextDouble()));
+        var releaseDate = LocalDate.of(year, 1, 1).plusDays(random.nextInt(365));
+
+        // geometric, mean 4, plus the lead
+        var castSize = 1 + Math.min(14, (int) (Math.log(1 - random.nextDouble()) / Math.log(0.8)));
+        var cast = new LinkedHashSet<String>();
+        for (int attempt = 0; cast.size() < castSize && attempt < castSize * 3; attempt++) {
+            cast.add(actor(castPopularity.next(random)));
+        }
+
+        return new MovieInfo(String.valueOf(id), name(id), year, new ArrayList<>(cast), releaseDate);
+    }
+
+    // "The Silent River", "The Dark River", ..., then "The Silent River 2" once every pair is taken
+    static String name(long id) {
+        var index = id - 1;
+        var name = "The " + ADJECTIVES[(int) (index % ADJECTIVES.length)] + " "
+                + NOUNS[(int) (index / ADJECTIVES.length % NOUNS.length)];
+        var sequel = index / (ADJECTIVES.length * NOUNS.length);
+        return sequel == 0 ? name : name + " " + (sequel + 1);
+    }
+
+    private static String actor(long rank) {
+        var index = rank - 1;
+        var actor = FIRST_NAMES[(int) (index % FIRST_NAMES.length)] + " "
+                + LAST_NAMES[(int) (index / FIRST_NAMES.length % LAST_NAMES.length)];
+        var namesake = index / (FIRST_NAMES.length * LAST_NAMES.length);
+        return namesake == 0 ? actor : actor + " " + toRoman(namesake + 1);
+    }
+
+    // namesakes get a suffix the way guilds tell them apart, Michael Caine II
+    private static String toRoman(long number) {
+        return number <= 3 ? "I".repeat((int) number) : String.valueOf(number);
+    }
+}
@@ -0,0 +1,62 @@
+package com.reactivespring.dataset;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+
+import java.util.SplittableRandom;
+
+/**
+ * findByName, findByYear and findAll of MovieInfoRepository on the generated
+ * MovieInfos. The lookups run first without any index but _id's, then with
+ * indexes on name and year, which MovieInfo does not declare: the difference is
+ * what declaring them would buy. Names are picked by a Zipf distribution over
+ * the ids, like real lookups that mostly ask for the same few movies.
+ * dataset.benchmark.lookups (1000) calls are made to indexed lookups,
+ * dataset.benchmark.scans (10) to the ones that read the whole collection.
+ */
+public class MovieInfoRepositoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var lookups = DatasetSettings.intValue("benchmark.lookups", 1000);
+        var scans = DatasetSettings.intValue("benchmark.scans", 10);
+
+        try (var datasetMongo = DatasetMongo.start()) {
+            var reactiveMongoTemplate = datasetMongo.reactiveMongoTemplate();
+            var movieInfoRepository = new ReactiveMongoRepositoryFactory(reactiveMongoTemplate)
+                    .getRepository(MovieInfoRepository.class);
+            var movieInfos = reactiveMongoTemplate.count(new Query(), MovieInfo.class).block();
+            if (movieInfos == 0) {
+                throw new IllegalStateException("There are no MovieInfos, run generateDataset first");
+            }
+            var popularity = new Zipf(movieInfos, 1.0);
+            // calls run concurrently, so each draws from a random of its own seeded from its index
+            var seed = DatasetSettings.count("seed", 42);
+            var years = MovieInfoDatasetGenerator.LAST_YEAR - MovieInfoDatasetGenerator.FIRST_YEAR + 1;
+
+            var benchmark = new RepositoryBenchmark(String.format("movies-info-service, %,d MovieInfos", movieInfos));
+            var indexOps = reactiveMongoTemplate.indexOps(MovieInfo.class);
+            indexOps.dropAllIndexes().block();
+            benchmark.run("findByName, no index", scans,
+                    call -> movieInfoRepository.findByName(MovieInfoDatasetGenerator.name(popularity.next(new SplittableRandom(seed * 31 + call)))));
+            benchmark.run("findByYear, no index", scans,
+                    call -> movieInfoRepository.findByYear(MovieInfoDatasetGenerator.FIRST_YEAR + (int) (call % years)));
+            benchmark.run("findAll", scans, call -> movieInfoRepository.findAll());
+
+            indexOps.ensureIndex(new Index("name", Sort.Direction.ASC)).block();
+            indexOps.ensureIndex(new Index("year", Sort.Direction.ASC)).block();
+            benchmark.run("findByName, name index", lookups,
+                    call -> movieInfoRepository.findByName(MovieInfoDatasetGenerator.name(popularity.next(new SplittableRandom(seed * 31 + call)))));
+            benchmark.run("findByYear, year index", scans,
+                    call -> movieInfoRepository.findByYear(MovieInfoDatasetGenerator.FIRST_YEAR + (int) (call % years)));
+            // leave the collection with the indexes MovieInfo declares, as the service would create them
+            indexOps.dropAllIndexes().block();
+            BulkLoader.ensureDeclaredIndexes(reactiveMongoTemplate, MovieInfo.class);
+
+            benchmark.report("movies-info-service.txt");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * In-memory cast member to movie ids map for the most looked-up names.
+ * The cache is bounded and frequency based, so only hot names stay resident,
+ * and a name is only indexed while it has at most maxIdsPerName movies: the
+ * ids of prolific actors are left to the {cast, _id} index in Mongo. Writes
+ * keep the resident entries current, by the cast lists of the saved document
+ * before and after the write.
+ */
+@Component
+public class CastIndex {
+
+    private AsyncCache<String, NavigableSet<String>> movieIdsByCast;
+    // names found to have more than maxIdsPerName movies, so they are not loaded again
+    private Cache<String, Boolean> oversizedNames;
+    private int maxIdsPerName;
+
+    public CastIndex(@Value("${moviesinfo.cast-index.maximum-size:1000}") long maximumSize,
+                     @Value("${moviesinfo.cast-index.expire-after-write:10m}") Duration expireAfterWrite,
+                     @Value("${moviesinfo.cast-index.max-ids-per-name:1000}") int maxIdsPerName) {
+        this.movieIdsByCast = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .buildAsync();
+        this.oversizedNames = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+        this.maxIdsPerName = maxIdsPerName;
+    }
+
+    /**
+     * The movie ids of the cast member, from memory or loaded with a single query
+     * for at most maxIdsPerName + 1 ids, which loader is given as its limit.
+     * Empty when the name has more movies than that and the caller should page
+     * through Mongo instead. Concurrent lookups of a cold name share one load.
+     */
+    public Mono<NavigableSet<String>> get(String cast, BiFunction<String, Integer, Flux<String>> loader) {
+        if (oversizedNames.getIfPresent(cast) != null) {
+            return Mono.empty();
+        }
+        // a load completing with null is not cached, Caffeine drops the entry
+        return Mono.fromFuture(movieIdsByCast.get(cast, (key, executor) -> loader.apply(key, maxIdsPerName + 1)
+                .<NavigableSet<String>>collect(ConcurrentSkipListSet::new, NavigableSet::add)
+                .flatMap(movieIds -> {
+                    if (movieIds.size() > maxIdsPerName) {
+                        oversizedNames.put(key, Boolean.TRUE);
+                        return Mono.empty();
+                    }
+                    return Mono.just(movieIds);
+                })
+                .toFuture()));
+    }
+
+    /**
+     * Moves the movie between the resident names it was dropped from and the ones
+     * it was added to. Only the names of the two cast lists are looked at, names
+     * that are not resident are left to be loaded when they are looked up.
+     */
+    public void onSaved(String movieInfoId, Collection<String> previousCast, Collection<String> cast) {
+        var currentCast = cast == null ? List.<String>of() : cast;
+        if (previousCast != null) {
+            for (var name : previousCast) {
+                if (!currentCast.contains(name)) {
+                    ifResident(name, movieIds -> movieIds.remove(movieInfoId));
+                }
+            }
+        }
+        for (var name : currentCast) {
+            ifResident(name, movieIds -> {
+                movieIds.add(movieInfoId);
+                if (movieIds.size() > maxIdsPerName) {
+                    // grown past the cap, from now on the name is paged through Mongo
+                    movieIdsByCast.synchronous().invalidate(name);
+                    oversizedNames.put(name, Boolean.TRUE);
+                }
+            });
+        }
+    }
+
+    public void onDeleted(String movieInfoId, Collection<String> cast) {
+        if (cast != null) {
+            cast.forEach(name -> ifResident(name, movieIds -> movieIds.remove(movieInfoId)));
+        }
+    }
+
+    /**
+     * Drops the resident names of a movie changed by another instance, whose
+     * previous cast list is not known: every name that holds the movie and every
+     * name of its new cast list, if any, is loaded again on its next lookup.
+     */
+    public void invalidate(String movieInfoId, Collection<String> cast) {
+        var names = new ArrayList<String>();
+        movieIdsByCast.asMap().forEach((name, future) -> {
+            var movieIds = future.getNow(null);
+            // a load still in flight may have read the movie as it was
+            if (movieIds == null || movieIds.contains(movieInfoId)) {
+                names.add(name);
+            }
+        });
+        if (cast != null) {
+            names.addAll(cast);
+        }
+        movieIdsByCast.synchronous().invalidateAll(names);
+        oversizedNames.invalidateAll(names);
+    }
+
+    public void invalidateAll() {
+        movieIdsByCast.synchronous().invalidateAll();
+        oversizedNames.invalidateAll();
+    }
+
+    // a load still in flight gets the change once it completes, so it cannot miss a write it raced with
+    private void ifResident(String name, Consumer<NavigableSet<String>> action) {
+        var future = movieIdsByCast.getIfPresent(name);
+        if (future != null) {
+            future.thenAccept(movieIds -> {
+                if (movieIds != null) {
+                    action.accept(movieIds);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache for MovieInfo lookups by id.
+ * Concurrent loads of the same id share one repository call. Ids that
+ * were not found are remembered in a separate, short-lived cache so
+ * repeated misses do not hit Mongo either.
+ */
+@Component
+public class MovieInfoCache {
+
+    static final String CACHE_NAME = "movieInfoById";
+
+    private AsyncCache<String, MovieInfo> movieInfoCache;
+    private Cache<String, Boolean> missingIdsCache;
+    private Counter negativeHits;
+
+    public MovieInfoCache(@Value("${moviesinfo.cache.maximum-size:10000}") long maximumSize,
+                          @Value("${moviesinfo.cache.expire-after-write:10m}") Duration expireAfterWrite,
+                          @Value("${moviesinfo.cache.negative-ttl:5s}") Duration negativeTtl,
+                          MeterRegistry meterRegistry) {
+        this.movieInfoCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        this.missingIdsCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(negativeTtl)
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, movieInfoCache.synchronous(), CACHE_NAME);
+        this.negativeHits = Counter.builder("cache.negative.hits")
+                .tag("cache", CACHE_NAME)
+                .description("Lookups answered by the cache of ids known to be missing")
+                .register(meterRegistry);
+    }
+
+    public Mono<MovieInfo> get(String id, Function<String, Mono<MovieInfo>> loader) {
+        if (missingIdsCache.getIfPresent(id) != null) {
+            negativeHits.increment();
+            return Mono.empty();
+        }
+
+        // a null result is not stored by Caffeine, so misses fall through to the negative cache
+        var future = movieInfoCache.get(id, (key, executor) -> loader.apply(key).toFuture());
+        // subscribe to a copy so a cancelled subscriber cannot cancel the shared load
+        return Mono.fromFuture(future.copy())
+                .switchIfEmpty(Mono.fromRunnable(() -> missingIdsCache.put(id, Boolean.TRUE)));
+    }
+
+    public void put(MovieInfo movieInfo) {
+        missingIdsCache.invalidate(movieInfo.getMovieInfoId());
+        movieInfoCache.put(movieInfo.getMovieInfoId(), CompletableFuture.completedFuture(movieInfo));
+    }
+
+    public void invalidate(String id) {
+        missingIdsCache.invalidate(id);
+        movieInfoCache.synchronous().invalidate(id);
+    }
+
+    public void invalidateAll() {
+        missingIdsCache.invalidateAll();
+        movieInfoCache.synchronous().invalidateAll();
+    }
+}
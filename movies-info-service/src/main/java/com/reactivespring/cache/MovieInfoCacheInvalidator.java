@@ -0,0 +1,95 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.domain.MovieInfo;
+import com.mongodb.client.model.changestream.FullDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Keeps the MovieInfo caches and the cast index coherent across instances by
+ * evicting every id that shows up on the collection's change stream, and the
+ * cast names that held the movie or that it has now. Change streams need a
+ * replica set, so this is only enabled with moviesinfo.cache.change-streams.enabled.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "moviesinfo.cache.change-streams.enabled", havingValue = "true")
+public class MovieInfoCacheInvalidator {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private MovieInfoCache movieInfoCache;
+    private MovieInfoJsonCache movieInfoJsonCache;
+    private CastIndex castIndex;
+    private Disposable subscription;
+
+    public MovieInfoCacheInvalidator(ReactiveMongoTemplate reactiveMongoTemplate,
+                                     MovieInfoCache movieInfoCache,
+                                     MovieInfoJsonCache movieInfoJsonCache,
+                                     CastIndex castIndex) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.movieInfoCache = movieInfoCache;
+        this.movieInfoJsonCache = movieInfoJsonCache;
+        this.castIndex = castIndex;
+    }
+
+    @PostConstruct
+    public void start() {
+        subscription = reactiveMongoTemplate.changeStream(MovieInfo.class)
+                // updates carry the document as it is now, for the cast names the movie was added to
+                .withOptions(options -> options.fullDocumentLookup(FullDocument.UPDATE_LOOKUP))
+                .listen()
+                .doOnNext(this::invalidate)
+                // everything may have changed while the stream was down
+                .doOnError(ex -> invalidateAll())
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private void invalidate(ChangeStreamEvent<MovieInfo> event) {
+        var documentKey = event.getRaw() == null ? null : event.getRaw().getDocumentKey();
+        if (documentKey == null || !documentKey.containsKey("_id")) {
+            log.warn("Change stream event without document key, clearing the MovieInfo caches");
+            invalidateAll();
+            return;
+        }
+        var id = toId(documentKey.get("_id"));
+        movieInfoCache.invalidate(id);
+        movieInfoJsonCache.invalidate(id);
+        var movieInfo = event.getBody();
+        castIndex.invalidate(id, movieInfo == null ? null : movieInfo.getCast());
+    }
+
+    private void invalidateAll() {
+        movieInfoCache.invalidateAll();
+        movieInfoJsonCache.invalidateAll();
+        castIndex.invalidateAll();
+    }
+
+    private String toId(BsonValue id) {
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        return id.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package com.reactivespring.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * MovieInfos already encoded as JSON, so GET /v1/moviesinfo/{id} can write the
+ * bytes as they are instead of running Jackson on every request.
+ * Encodings are held in direct buffers, off the heap and ready to be handed to
+ * the socket, and evicted once their total size exceeds
+ * moviesinfo.json-cache.max-size. Every caller gets its own read-only view of the
+ * shared buffer. Entries are dropped on update and delete and encoded again on
+ * the next read; an encoding that was in flight when its movie was updated is
+ * not cached, those of other movies are.
+ */
+@Component
+public class MovieInfoJsonCache {
+
+    static final String CACHE_NAME = "movieInfoJsonById";
+
+    private Cache<String, ByteBuffer> jsonCache;
+    private ObjectMapper objectMapper;
+    // the ids being encoded, only while they are, with how often each was invalidated meanwhile
+    private ConcurrentHashMap<String, Encodings> encodings = new ConcurrentHashMap<>();
+
+    public MovieInfoJsonCache(ObjectMapper objectMapper,
+                              @Value("${moviesinfo.json-cache.max-size:64MB}") DataSize maxSize,
+                              @Value("${moviesinfo.json-cache.expire-after-write:10m}") Duration expireAfterWrite,
+                              MeterRegistry meterRegistry) {
+        this(objectMapper, maxSize, expireAfterWrite, meterRegistry, Caffeine.newBuilder());
+    }
+
+    // the builder lets tests run eviction on the calling thread
+    MovieInfoJsonCache(ObjectMapper objectMapper, DataSize maxSize, Duration expireAfterWrite,
+                       MeterRegistry meterRegistry, Caffeine<Object, Object> builder) {
+        this.objectMapper = objectMapper;
+        this.jsonCache = builder
+                .maximumWeight(maxSize.toBytes())
+                .<String, ByteBuffer>weigher((id, json) -> json.capacity())
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, jsonCache, CACHE_NAME);
+        Gauge.builder("cache.hit.ratio", jsonCache, cache -> cache.stats().hitRate())
+                .tag("cache", CACHE_NAME)
+                .description("Share of lookups answered with an already encoded MovieInfo")
+                .register(meterRegistry);
+        Gauge.builder("cache.size.bytes", jsonCache, MovieInfoJsonCache::weightedSizeOf)
+                .tag("cache", CACHE_NAME)
+                .description("Bytes of encoded MovieInfos held in the cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The JSON of the MovieInfo, encoded from what the loader returns on a miss.
+     * Empty when the loader finds nothing.
+     */
+    public Mono<ByteBuffer> get(String id, Function<String, Mono<MovieInfo>> loader) {
+        var json = jsonCache.getIfPresent(id);
+        if (json != null) {
+            return Mono.just(json.asReadOnlyBuffer());
+        }
+
+        return Mono.defer(() -> {
+            var invalidationsBefore = new long[1];
+            var inFlight = encodings.compute(id, (key, current) -> {
+                var started = current != null ? current : new Encodings();
+                started.count++;
+                invalidationsBefore[0] = started.invalidations;
+                return started;
+            });
+            return loader.apply(id)
+                    .map(this::encode)
+                    .doOnNext(encoded -> {
+                        jsonCache.put(id, encoded);
+                        // an update of this movie that landed while encoding must not leave the old version behind
+                        if (inFlight.invalidations != invalidationsBefore[0]) {
+                            jsonCache.invalidate(id);
+                        }
+                    })
+                    .map(ByteBuffer::asReadOnlyBuffer)
+                    .doFinally(signalType -> encodings.computeIfPresent(id,
+                            (key, current) -> --current.count == 0 ? null : current));
+        });
+    }
+
+    public void invalidate(String id) {
+        encodings.computeIfPresent(id, (key, current) -> current.invalidated());
+        jsonCache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        encodings.replaceAll((key, current) -> current.invalidated());
+        jsonCache.invalidateAll();
+    }
+
+    long weightedSize() {
+        jsonCache.cleanUp();
+        return weightedSizeOf(jsonCache);
+    }
+
+    long hitCount() {
+        return jsonCache.stats().hitCount();
+    }
+
+    private ByteBuffer encode(MovieInfo movieInfo) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(movieInfo);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("MovieInfo " + movieInfo.getMovieInfoId() + " could not be encoded", ex);
+        }
+        return ByteBuffer.allocateDirect(json.length).put(json).flip();
+    }
+
+    // changed under the encodings map's lock of the id only
+    private static class Encodings {
+        private int count;
+        private volatile long invalidations;
+
+        private Encodings invalidated() {
+            invalidations++;
+            return this;
+        }
+    }
+
+    private static long weightedSizeOf(Cache<String, ByteBuffer> cache) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+}
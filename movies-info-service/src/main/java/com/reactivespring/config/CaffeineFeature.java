@@ -0,0 +1,74 @@
+package com.reactivespring.config;
+
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.nativeimage.hosted.RuntimeReflection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+/**
+ * Registers Caffeine's generated cache and node classes for reflection in the
+ * native image. Caffeine picks them by a name built from the builder options and
+ * loads them reflectively, so instead of listing the names the options lead to,
+ * every generated class in the Caffeine jar on the image class path is
+ * registered: their simple names are all capitals (SSMSW, PSW, ...), and they
+ * extend BoundedLocalCache or Node. Any combination of builder options works
+ * then, at the cost of compiling the classes no cache uses into the image.
+ * Enabled by the --features argument in META-INF/native-image.
+ */
+public class CaffeineFeature implements Feature {
+
+    private static final String CACHE_PACKAGE = "com.github.benmanes.caffeine.cache";
+
+    @Override
+    public void beforeAnalysis(BeforeAnalysisAccess access) {
+        var caffeine = access.findClassByName(CACHE_PACKAGE + ".Caffeine");
+        if (caffeine == null) {
+            return;
+        }
+        var boundedLocalCache = access.findClassByName(CACHE_PACKAGE + ".BoundedLocalCache");
+        var node = access.findClassByName(CACHE_PACKAGE + ".Node");
+
+        for (var className : generatedClassNames(caffeine)) {
+            var type = access.findClassByName(className);
+            if (type == null || !(boundedLocalCache.isAssignableFrom(type) || node.isAssignableFrom(type))) {
+                continue;
+            }
+            RuntimeReflection.register(type);
+            RuntimeReflection.register(type.getDeclaredConstructors());
+            RuntimeReflection.register(type.getDeclaredFields());
+        }
+    }
+
+    private static Iterable<String> generatedClassNames(Class<?> caffeine) {
+        try {
+            var location = Path.of(caffeine.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                return generatedClassNames(location);
+            }
+            try (var jar = FileSystems.newFileSystem(location, (ClassLoader) null)) {
+                return generatedClassNames(jar.getPath("/"));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (URISyntaxException ex) {
+            throw new IllegalStateException("Caffeine jar location is not a file: " + ex.getInput(), ex);
+        }
+    }
+
+    private static Iterable<String> generatedClassNames(Path root) throws IOException {
+        var packageDir = root.resolve(CACHE_PACKAGE.replace('.', '/'));
+        try (var classFiles = Files.list(packageDir)) {
+            return classFiles
+                    .map(classFile -> classFile.getFileName().toString())
+                    .filter(fileName -> fileName.matches("[A-Z]+\\.class"))
+                    .map(fileName -> CACHE_PACKAGE + "." + fileName.substring(0, fileName.length() - ".class".length()))
+                    .collect(Collectors.toList());
+        }
+    }
+}
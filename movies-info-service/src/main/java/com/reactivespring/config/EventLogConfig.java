@@ -0,0 +1,38 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.eventlog.JsonEventLog;
+import com.reactivespring.eventlog.MappedEventLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * The on-disk log behind /v1/moviesinfo/stream, so the stream's history survives
+ * restarts and is not held on the heap.
+ */
+@Configuration
+public class EventLogConfig {
+
+    @Bean(destroyMethod = "close")
+    public JsonEventLog<MovieInfo> movieInfoEventLog(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${moviesinfo.event-log.dir:data/event-log}") String dir,
+            @Value("${moviesinfo.event-log.segment-size:64MB}") DataSize segmentSize,
+            @Value("${moviesinfo.event-log.flush-interval:1s}") Duration flushInterval,
+            @Value("${moviesinfo.event-log.retention-size:1GB}") DataSize retentionSize,
+            @Value("${moviesinfo.event-log.retention-age:7d}") Duration retentionAge,
+            @Value("${moviesinfo.event-log.append-queue-size:10000}") int appendQueueSize) throws IOException {
+        var eventLog = new MappedEventLog(Path.of(dir), Math.toIntExact(segmentSize.toBytes()), flushInterval,
+                retentionSize.toBytes(), retentionAge);
+        return new JsonEventLog<>(eventLog, objectMapper, MovieInfo.class, meterRegistry, appendQueueSize);
+    }
+}
@@ -0,0 +1,40 @@
+package com.reactivespring.config;
+
+import com.reactivespring.metrics.MongoCommandMetrics;
+import com.reactivespring.metrics.RepositoryMethodContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Registers MongoCommandMetrics with the reactive MongoClient, and the context
+ * provider that tells it which repository method issued each command.
+ */
+@Configuration
+public class MongoMetricsConfig {
+
+    // static, so the post processor does not force this configuration to be created early
+    @Bean
+    static RepositoryMethodContext repositoryMethodContext() {
+        return new RepositoryMethodContext();
+    }
+
+    @Bean
+    public MongoCommandMetrics mongoCommandMetrics(
+            MeterRegistry meterRegistry,
+            @Value("${moviesinfo.mongo.slow-command-threshold:200ms}") Duration slowCommandThreshold) {
+        return new MongoCommandMetrics(meterRegistry, slowCommandThreshold);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoCommandMetricsCustomizer(MongoCommandMetrics mongoCommandMetrics) {
+        return settings -> settings
+                .addCommandListener(mongoCommandMetrics)
+                .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(mongoCommandMetrics))
+                .contextProvider(new RepositoryMethodContext.ContextProvider());
+    }
+}
@@ -0,0 +1,26 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.CastCount;
+import com.reactivespring.domain.FacetFilter;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.YearCount;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.nativex.hint.NativeHint;
+import org.springframework.nativex.hint.ResourceHint;
+import org.springframework.nativex.hint.TypeAccess;
+import org.springframework.nativex.hint.TypeHint;
+
+/**
+ * Native image hints for what Spring AOT cannot infer: the payload types that
+ * Jackson and the Mongo converter read reflectively outside of controller
+ * signatures, and the profile specific configuration files. The Caffeine classes
+ * are registered by CaffeineFeature.
+ */
+@NativeHint(
+        types = @TypeHint(types = {MovieInfo.class, MovieInfoLookup.class, YearCount.class, CastCount.class, FacetFilter.class},
+                access = {TypeAccess.DECLARED_CONSTRUCTORS, TypeAccess.DECLARED_FIELDS, TypeAccess.DECLARED_METHODS}),
+        resources = @ResourceHint(patterns = "application-.*\\.yml"))
+@Configuration
+public class NativeHintsConfig {
+}
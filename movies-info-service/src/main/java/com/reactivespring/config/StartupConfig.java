@@ -0,0 +1,24 @@
+package com.reactivespring.config;
+
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.cache.MovieInfoCacheInvalidator;
+import com.reactivespring.cache.MovieInfoJsonCache;
+import com.reactivespring.eventlog.JsonEventLog;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The startup profile (application-startup.yml) creates beans on first use.
+ * Beans that register meters or start background work when they are created
+ * stay eager, so they behave the same with and without the profile.
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerStartupBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(MovieInfoCache.class, MovieInfoCacheInvalidator.class,
+                MovieInfoJsonCache.class, JsonEventLog.class);
+    }
+}
@@ -1,54 +1,224 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.CastCount;
+import com.reactivespring.domain.FacetFilter;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.YearCount;
+import com.reactivespring.eventlog.JsonEventLog;
+import com.reactivespring.eventlog.LoggedEvent;
+import com.reactivespring.service.MovieInfoFacetService;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.stream.MovieInfoStreamRouter;
+import com.reactivespring.util.MovieInfoCsvUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
 import javax.validation.Valid;
+import java.util.List;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/v1")
+@Slf4j
 public class MoviesInfoController {
 
     private MoviesInfoService moviesInfoService;
-    private Sinks.Many<MovieInfo> movieInfoSink = Sinks.many().replay().all();
-//    private Sinks.Many<MovieInfo> movieInfoSink = Sinks.many().replay().latest();
+    private MovieInfoFacetService movieInfoFacetService;
+    private MovieInfoStreamRouter movieInfoStreamRouter;
+    private JsonEventLog<MovieInfo> movieInfoEventLog;
+    // live MovieInfos for in-process consumers, the stream's history is in movieInfoEventLog
+    private Sinks.Many<MovieInfo> movieInfoSink = Sinks.many().multicast().directBestEffort();
 
-    public MoviesInfoController(MoviesInfoService moviesInfoService) {
+    @Value("${moviesinfo.export.batch-size:500}")
+    private int exportBatchSize;
+
+    @Value("${moviesinfo.export.max-batch-size:5000}")
+    private int exportMaxBatchSize;
+
+    @Value("${moviesinfo.page.max-size:100}")
+    private int pageMaxSize;
+
+    @Value("${moviesinfo.multi-get.max-ids:1000}")
+    private int multiGetMaxIds;
+
+    @Value("${moviesinfo.facets.max-limit:100}")
+    private int facetsMaxLimit;
+
+    public MoviesInfoController(MoviesInfoService moviesInfoService,
+                                MovieInfoFacetService movieInfoFacetService,
+                                MovieInfoStreamRouter movieInfoStreamRouter,
+                                JsonEventLog<MovieInfo> movieInfoEventLog) {
         this.moviesInfoService = moviesInfoService;
+        this.movieInfoFacetService = movieInfoFacetService;
+        this.movieInfoStreamRouter = movieInfoStreamRouter;
+        this.movieInfoEventLog = movieInfoEventLog;
+        // keep cached facets current as new movies are added
+        movieInfoSink.asFlux().subscribe(perMovieInfo("facet refresh", movieInfoFacetService::onMovieInfoAdded));
+    }
+
+    // an exception would end the subscription for good, so it is logged and the next MovieInfo handled
+    private static Consumer<MovieInfo> perMovieInfo(String consumerName, Consumer<MovieInfo> consumer) {
+        return movieInfo -> {
+            try {
+                consumer.accept(movieInfo);
+            } catch (RuntimeException ex) {
+                log.error("{} failed for MovieInfo {}", consumerName, movieInfo.getMovieInfoId(), ex);
+            }
+        };
     }
 
     @PostMapping("/moviesinfo")
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo) {
         return moviesInfoService.addMovieInfo(movieInfo)
+                .doOnNext(movieInfoEventLog::appendLater)
                 .doOnNext(savedMovieInfo -> movieInfoSink.tryEmitNext(savedMovieInfo));
     }
 
     @GetMapping("/moviesinfo")
-    public Flux<MovieInfo> getAllMoviesInfo(@RequestParam(value = "year", required = false) Integer year) {
+    public Flux<MovieInfo> getAllMoviesInfo(
+            @RequestParam(value = "year", required = false) Integer year,
+            @RequestParam(value = "cast", required = false) String cast,
+            @RequestParam(value = "page", defaultValue = "0") Integer page,
+            @RequestParam(value = "size", defaultValue = "20") Integer size) {
+        if (cast != null) {
+            var boundedSize = Math.max(1, Math.min(size, pageMaxSize));
+            return moviesInfoService.getAllMoviesInfoByCast(cast, Math.max(0, page), boundedSize);
+        }
         if (year != null) {
             return moviesInfoService.getAllMoviesInfoByYear(year);
         }
         return moviesInfoService.getAllMoviesInfo();
     }
 
+    @GetMapping(value = "/moviesinfo", params = "ids")
+    public Flux<MovieInfoLookup> getMoviesInfoByIds(@RequestParam("ids") List<String> ids) {
+        return moviesInfoService.getMoviesInfoByIds(checkIdsCount(ids));
+    }
+
+    @PostMapping("/moviesinfo/ids")
+    public Flux<MovieInfoLookup> getMoviesInfoByIdsFromBody(@RequestBody List<String> ids) {
+        return moviesInfoService.getMoviesInfoByIds(checkIdsCount(ids));
+    }
+
+    private List<String> checkIdsCount(List<String> ids) {
+        if (ids.size() > multiGetMaxIds) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + multiGetMaxIds + " ids can be requested at once");
+        }
+        return ids;
+    }
+
+    /**
+     * The retained history (from fromOffset, or all of it) followed by the live
+     * movies, filtered by year or cast if given; the filtered live movies come from
+     * MovieInfoStreamRouter's topics, only their history is filtered per subscriber.
+     * As text/event-stream, every event's id is its offset, so reconnecting clients
+     * resume after it with Last-Event-ID.
+     */
     @GetMapping(value = "/moviesinfo/stream",
-            produces = MediaType.APPLICATION_NDJSON_VALUE) // json values as a stream
-    public Flux<MovieInfo> getMovieStream() {
-        return movieInfoSink.asFlux();
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE}) // json values as a stream
+    public Flux<?> getMovieStream(
+            @RequestParam(value = "year", required = false) Integer year,
+            @RequestParam(value = "cast", required = false) String cast,
+            @RequestParam(value = "fromOffset", required = false) Long fromOffset,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            ServerHttpRequest request) {
+        var serverSentEvents = request.getHeaders().getAccept().contains(MediaType.TEXT_EVENT_STREAM);
+        var movieInfos = year == null && cast == null
+                ? tailEventLog(fromOffset, lastEventId)
+                : subscribeFiltered(year, cast, fromOffset, lastEventId);
+        if (serverSentEvents) {
+            return movieInfos.map(loggedEvent -> ServerSentEvent.builder(loggedEvent.getEvent())
+                    .id(String.valueOf(loggedEvent.getOffset()))
+                    .build());
+        }
+        return movieInfos.map(LoggedEvent::getEvent);
     }
 
-    @GetMapping("/moviesinfo/{id}")
-    public Mono<ResponseEntity<MovieInfo>> getMovieInfoById(@PathVariable String id) {
-        return moviesInfoService.getMovieInfoById(id)
-                .map(ResponseEntity.ok()::body)
+    private Flux<LoggedEvent<MovieInfo>> tailEventLog(Long fromOffset, Long lastEventId) {
+        if (lastEventId != null) {
+            return movieInfoEventLog.tailAfter(checkOffset(lastEventId));
+        }
+        return movieInfoEventLog.tail(fromOffset == null ? movieInfoEventLog.earliestOffset() : checkOffset(fromOffset));
+    }
+
+    private Flux<LoggedEvent<MovieInfo>> subscribeFiltered(Integer year, String cast, Long fromOffset, Long lastEventId) {
+        if (lastEventId != null) {
+            return movieInfoStreamRouter.subscribeAfter(year, cast, checkOffset(lastEventId));
+        }
+        return movieInfoStreamRouter.subscribe(year, cast,
+                fromOffset == null ? movieInfoEventLog.earliestOffset() : checkOffset(fromOffset));
+    }
+
+    private long checkOffset(long offset) {
+        if (!movieInfoEventLog.isValidOffset(offset)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No stream event starts at offset " + offset);
+        }
+        return offset;
+    }
+
+    @GetMapping(value = "/moviesinfo/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfo> exportMoviesInfo(
+            @RequestParam(value = "lastSeenId", required = false) String lastSeenId,
+            @RequestParam(value = "batchSize", required = false) Integer batchSize) {
+        return moviesInfoService.exportMoviesInfo(lastSeenId, resolveBatchSize(batchSize));
+    }
+
+    @GetMapping(value = "/moviesinfo/export", params = "format=csv", produces = "text/csv")
+    public Flux<String> exportMoviesInfoCsv(
+            @RequestParam(value = "lastSeenId", required = false) String lastSeenId,
+            @RequestParam(value = "batchSize", required = false) Integer batchSize) {
+        var rows = moviesInfoService.exportMoviesInfo(lastSeenId, resolveBatchSize(batchSize))
+                .map(MovieInfoCsvUtil::toCsvLine);
+        return Flux.concat(Mono.just(MovieInfoCsvUtil.HEADER), rows);
+    }
+
+    // a batch is held in memory, so a client cannot ask for more than max-batch-size at once
+    private int resolveBatchSize(Integer batchSize) {
+        return batchSize != null && batchSize > 0 ? Math.min(batchSize, exportMaxBatchSize) : exportBatchSize;
+    }
+
+    @GetMapping("/moviesinfo/facets/years")
+    public Mono<List<YearCount>> getYearCounts(
+            @RequestParam(value = "fromYear", required = false) Integer fromYear,
+            @RequestParam(value = "toYear", required = false) Integer toYear,
+            @RequestParam(value = "cast", required = false) String cast) {
+        return movieInfoFacetService.getYearCounts(new FacetFilter(fromYear, toYear, cast, null));
+    }
+
+    @GetMapping("/moviesinfo/facets/cast")
+    public Mono<List<CastCount>> getTopCast(
+            @RequestParam(value = "limit", defaultValue = "10") Integer limit,
+            @RequestParam(value = "fromYear", required = false) Integer fromYear,
+            @RequestParam(value = "toYear", required = false) Integer toYear,
+            @RequestParam(value = "cast", required = false) String cast) {
+        var boundedLimit = Math.max(1, Math.min(limit, facetsMaxLimit));
+        return movieInfoFacetService.getTopCast(new FacetFilter(fromYear, toYear, cast, boundedLimit));
+    }
+
+    // written as the cached JSON bytes, wrapping the buffer does not copy it
+    @GetMapping(value = "/moviesinfo/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<DataBuffer>> getMovieInfoById(@PathVariable String id) {
+        return moviesInfoService.getMovieInfoJsonById(id)
+                .map(json -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(DefaultDataBufferFactory.sharedInstance.wrap(json)))
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
 
@@ -67,4 +237,22 @@ public class MoviesInfoController {
     public Mono<Void> deleteMovieInfoById(@PathVariable String id) {
         return moviesInfoService.deleteMovieInfoById(id);
     }
+
+    // RSocket routes, served over TCP and over WebSocket at /rsocket
+
+    @MessageMapping("moviesinfo.{id}")
+    public Mono<MovieInfo> getMovieInfoByIdRSocket(@DestinationVariable String id) {
+        return moviesInfoService.getMovieInfoById(id);
+    }
+
+    @MessageMapping("moviesinfo.ids")
+    public Flux<MovieInfoLookup> getMoviesInfoByIdsRSocket(List<String> ids) {
+        return moviesInfoService.getMoviesInfoByIds(checkIdsCount(ids));
+    }
+
+    @MessageMapping("moviesinfo.stream")
+    public Flux<MovieInfo> getMovieStreamRSocket() {
+        return movieInfoEventLog.tail(movieInfoEventLog.earliestOffset())
+                .map(LoggedEvent::getEvent);
+    }
 }
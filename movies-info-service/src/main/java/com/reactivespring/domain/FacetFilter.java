@@ -0,0 +1,27 @@
+package com.reactivespring.domain;
+
+import lombok.Value;
+
+/**
+ * Optional filters shared by the catalog facets. Also used as the facet cache key,
+ * so limit is only set for facets that are truncated to a top-N.
+ */
+@Value
+public class FacetFilter {
+
+    Integer fromYear;
+    Integer toYear;
+    String cast;
+    Integer limit;
+
+    public boolean matches(MovieInfo movieInfo) {
+        var year = movieInfo.getYear();
+        if (fromYear != null && (year == null || year < fromYear)) {
+            return false;
+        }
+        if (toYear != null && (year == null || year > toYear)) {
+            return false;
+        }
+        return cast == null || (movieInfo.getCast() != null && movieInfo.getCast().contains(cast));
+    }
+}
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -16,6 +17,8 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Document
+// multikey index: one entry per cast member, ordered by id within each name for paging
+@CompoundIndex(name = "cast_id", def = "{'cast': 1, '_id': 1}")
 public class MovieInfo {
 
     @Id
@@ -30,4 +33,10 @@ public class MovieInfo {
 
     private LocalDate release_date;
 
+    // bumped on every update; send it back on PUT to have concurrent updates rejected
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null);
+    }
 }
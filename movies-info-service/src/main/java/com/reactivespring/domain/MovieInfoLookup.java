@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry per requested id of a multi-get, in request order.
+ * Ids with no matching document come back with found = false and no movieInfo.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MovieInfoLookup {
+
+    private String movieInfoId;
+    private boolean found;
+    private MovieInfo movieInfo;
+}
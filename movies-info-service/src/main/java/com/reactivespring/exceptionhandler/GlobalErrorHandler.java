@@ -1,5 +1,6 @@
 package com.reactivespring.exceptionhandler;
 
+import com.reactivespring.exception.MovieInfoVersionConflictException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
 import org.springframework.http.HttpStatus;
@@ -24,4 +25,10 @@ public class GlobalErrorHandler {
         log.error("Error is: {}", error);
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
+
+    @ExceptionHandler(MovieInfoVersionConflictException.class)
+    public ResponseEntity<String> handleVersionConflict(MovieInfoVersionConflictException ex) {
+        log.error("Exception caught in handleVersionConflict: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
 }
@@ -1,6 +1,7 @@
 package com.reactivespring.repository;
 
 import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -10,4 +11,6 @@ public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo,
     Flux<MovieInfo> findByYear(Integer year);
 
     Mono<MovieInfo> findByName(String name);
+
+    Flux<MovieInfo> findByCast(String cast, Pageable pageable);
 }
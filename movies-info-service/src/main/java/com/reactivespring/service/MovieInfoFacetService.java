@@ -0,0 +1,168 @@
+package com.reactivespring.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.CastCount;
+import com.reactivespring.domain.FacetFilter;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.YearCount;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Catalog facets computed by Mongo aggregation pipelines, so clients only receive
+ * the counts instead of the whole collection. Results are cached for a short TTL
+ * and kept current in between by applying every newly added MovieInfo to the
+ * cached counts. Updates and deletes are only picked up once the TTL expires.
+ */
+@Service
+public class MovieInfoFacetService {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private Cache<FacetFilter, List<YearCount>> yearCountsCache;
+    private Cache<FacetFilter, List<CastCount>> topCastCache;
+
+    public MovieInfoFacetService(ReactiveMongoTemplate reactiveMongoTemplate,
+                                 @Value("${moviesinfo.facets.ttl:30s}") Duration ttl,
+                                 @Value("${moviesinfo.facets.maximum-size:1000}") long maximumSize) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.yearCountsCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.topCastCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Mono<List<YearCount>> getYearCounts(FacetFilter filter) {
+        var cached = yearCountsCache.getIfPresent(filter);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+
+        var aggregation = newAggregation(MovieInfo.class,
+                match(toCriteria(filter)),
+                group("year").count().as("count"),
+                project("count").and("year").previousOperation(),
+                sort(Sort.Direction.ASC, "year"));
+
+        return reactiveMongoTemplate.aggregate(aggregation, YearCount.class)
+                .collectList()
+                .doOnNext(yearCounts -> yearCountsCache.put(filter, yearCounts));
+    }
+
+    public Mono<List<CastCount>> getTopCast(FacetFilter filter) {
+        var cached = topCastCache.getIfPresent(filter);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+
+        var aggregation = newAggregation(MovieInfo.class,
+                match(toCriteria(filter)),
+                unwind("cast"),
+                group("cast").count().as("count"),
+                project("count").and("name").previousOperation(),
+                sort(Sort.by(Sort.Direction.DESC, "count").and(Sort.by(Sort.Direction.ASC, "name"))),
+                limit(filter.getLimit()));
+
+        return reactiveMongoTemplate.aggregate(aggregation, CastCount.class)
+                .collectList()
+                .doOnNext(castCounts -> topCastCache.put(filter, castCounts));
+    }
+
+    public void onMovieInfoAdded(MovieInfo movieInfo) {
+        yearCountsCache.asMap().replaceAll((filter, yearCounts) ->
+                filter.matches(movieInfo) ? incrementYear(yearCounts, movieInfo.getYear()) : yearCounts);
+
+        for (var filter : topCastCache.asMap().keySet()) {
+            if (filter.matches(movieInfo)) {
+                topCastCache.asMap().computeIfPresent(filter, (key, castCounts) ->
+                        incrementCast(castCounts, movieInfo.getCast(), key.getLimit()));
+            }
+        }
+    }
+
+    private List<YearCount> incrementYear(List<YearCount> yearCounts, Integer year) {
+        var updated = new ArrayList<YearCount>(yearCounts.size() + 1);
+        var found = false;
+        for (var yearCount : yearCounts) {
+            // legacy documents may have no year, and so a null year group
+            if (Objects.equals(yearCount.getYear(), year)) {
+                updated.add(new YearCount(year, yearCount.getCount() + 1));
+                found = true;
+            } else {
+                updated.add(yearCount);
+            }
+        }
+        if (!found) {
+            updated.add(new YearCount(year, 1L));
+            updated.sort(Comparator.comparing(YearCount::getYear, Comparator.nullsFirst(Comparator.naturalOrder())));
+        }
+        return updated;
+    }
+
+    /**
+     * Returns null, which drops the entry, when a cast member outside a full top-N shows up:
+     * their previous count is unknown, so the next read recomputes the facet instead.
+     */
+    private List<CastCount> incrementCast(List<CastCount> castCounts, List<String> cast, int limit) {
+        if (cast == null || cast.isEmpty()) {
+            return castCounts;
+        }
+        var updated = new ArrayList<>(castCounts);
+        for (var name : cast) {
+            var index = indexOf(updated, name);
+            if (index >= 0) {
+                updated.set(index, new CastCount(name, updated.get(index).getCount() + 1));
+            } else if (castCounts.size() < limit) {
+                // a top-N that is not full already lists everyone, so this is a first appearance
+                updated.add(new CastCount(name, 1L));
+            } else {
+                return null;
+            }
+        }
+        updated.sort(Comparator.comparing(CastCount::getCount).reversed()
+                .thenComparing(CastCount::getName));
+        return updated.size() > limit ? new ArrayList<>(updated.subList(0, limit)) : updated;
+    }
+
+    private int indexOf(List<CastCount> castCounts, String name) {
+        for (int i = 0; i < castCounts.size(); i++) {
+            if (castCounts.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Criteria toCriteria(FacetFilter filter) {
+        var criteria = new Criteria();
+        if (filter.getFromYear() != null || filter.getToYear() != null) {
+            criteria = Criteria.where("year");
+            if (filter.getFromYear() != null) {
+                criteria = criteria.gte(filter.getFromYear());
+            }
+            if (filter.getToYear() != null) {
+                criteria = criteria.lte(filter.getToYear());
+            }
+        }
+        if (filter.getCast() != null) {
+            criteria = criteria.and("cast").is(filter.getCast());
+        }
+        return criteria;
+    }
+}
@@ -1,23 +1,88 @@
 package com.reactivespring.service;
 
+import com.reactivespring.cache.CastIndex;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.cache.MovieInfoJsonCache;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.exception.MovieInfoVersionConflictException;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 @Service
 public class MoviesInfoService {
 
     private MovieInfoRepository movieInfoRepository;
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private MovieInfoCache movieInfoCache;
+    private MovieInfoJsonCache movieInfoJsonCache;
+    private CastIndex castIndex;
+
+    @Value("${moviesinfo.multi-get.chunk-size:100}")
+    private int multiGetChunkSize;
 
-    public MoviesInfoService(MovieInfoRepository movieInfoRepository) {
+    @Value("${moviesinfo.multi-get.concurrency:4}")
+    private int multiGetConcurrency;
+
+    public MoviesInfoService(MovieInfoRepository movieInfoRepository,
+                             ReactiveMongoTemplate reactiveMongoTemplate,
+                             MovieInfoCache movieInfoCache,
+                             MovieInfoJsonCache movieInfoJsonCache,
+                             CastIndex castIndex) {
         this.movieInfoRepository = movieInfoRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.movieInfoCache = movieInfoCache;
+        this.movieInfoJsonCache = movieInfoJsonCache;
+        this.castIndex = castIndex;
     }
 
+    /**
+     * Inserts the MovieInfo, or replaces the stored one when its id is taken. The
+     * replace is a findAndReplace returning the document as it was, so the cast
+     * index learns which names the movie left, as with updateMovieInfo.
+     */
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
-        return movieInfoRepository.save(movieInfo);
+        if (movieInfo.getMovieInfoId() == null) {
+            // the id is generated, there is nothing to replace
+            return movieInfoRepository.save(movieInfo)
+                    .doOnNext(savedMovieInfo -> onAdded(savedMovieInfo, null));
+        }
+        return reactiveMongoTemplate
+                .findAndReplace(Query.query(Criteria.where("movieInfoId").is(movieInfo.getMovieInfoId())), movieInfo,
+                        FindAndReplaceOptions.options().upsert())
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .map(previousMovieInfo -> {
+                    onAdded(movieInfo, previousMovieInfo.map(MovieInfo::getCast).orElse(null));
+                    return movieInfo;
+                });
+    }
+
+    private void onAdded(MovieInfo movieInfo, List<String> previousCast) {
+        movieInfoCache.put(movieInfo);
+        movieInfoJsonCache.invalidate(movieInfo.getMovieInfoId());
+        castIndex.onSaved(movieInfo.getMovieInfoId(), previousCast, movieInfo.getCast());
     }
 
     public Flux<MovieInfo> getAllMoviesInfo() {
@@ -25,27 +90,175 @@ public class MoviesInfoService {
     }
 
     public Mono<MovieInfo> getMovieInfoById(String id) {
-        return movieInfoRepository.findById(id);
+        return movieInfoCache.get(id, movieInfoRepository::findById);
+    }
+
+    // the MovieInfo as JSON, encoded once and then served from the cache until it changes
+    public Mono<ByteBuffer> getMovieInfoJsonById(String id) {
+        return movieInfoJsonCache.get(id, this::getMovieInfoById);
     }
 
+    /**
+     * Looks up many ids with one $in query per chunk of multiGetChunkSize ids.
+     * Chunks are queried concurrently but emitted in order, and every requested
+     * id yields exactly one entry, so missing ids are reported rather than skipped.
+     */
+    public Flux<MovieInfoLookup> getMoviesInfoByIds(List<String> ids) {
+        return Flux.fromIterable(ids)
+                .buffer(multiGetChunkSize)
+                .flatMapSequential(this::lookupChunk, multiGetConcurrency);
+    }
+
+    private Flux<MovieInfoLookup> lookupChunk(List<String> chunkIds) {
+        return movieInfoRepository.findAllById(new LinkedHashSet<>(chunkIds))
+                .collectMap(MovieInfo::getMovieInfoId)
+                .flatMapIterable(foundById -> chunkIds.stream()
+                        .map(id -> new MovieInfoLookup(id, foundById.containsKey(id), foundById.get(id)))
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Updates the document with a single findAndModify that only $sets the fields
+     * present in the request. When the request carries a version, the update only
+     * applies if it still matches the stored one. The command returns the document
+     * as it was, so the cast index learns which names the movie left, and the
+     * updated MovieInfo is derived from it the way Mongo applies the update.
+     */
     public Mono<MovieInfo> updateMovieInfo(MovieInfo updatedMovieInfo, String id) {
-        return movieInfoRepository
-                .findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setCast(updatedMovieInfo.getCast());
-                    movieInfo.setName(updatedMovieInfo.getName());
-                    movieInfo.setRelease_date(updatedMovieInfo.getRelease_date());
-                    movieInfo.setYear(updatedMovieInfo.getYear());
-                    // do not care about movieInfo's id
-                    return movieInfoRepository.save(movieInfo);
-                });
+        var query = Query.query(Criteria.where("movieInfoId").is(id));
+        if (updatedMovieInfo.getVersion() != null) {
+            query.addCriteria(versionCriteria(updatedMovieInfo.getVersion()));
+        }
+
+        return reactiveMongoTemplate
+                .findAndModify(query, toUpdate(updatedMovieInfo),
+                        FindAndModifyOptions.options().returnNew(false), MovieInfo.class)
+                .map(previousMovieInfo -> {
+                    var movieInfo = applyUpdate(previousMovieInfo, updatedMovieInfo);
+                    castIndex.onSaved(id, previousMovieInfo.getCast(), movieInfo.getCast());
+                    return movieInfo;
+                })
+                .switchIfEmpty(Mono.defer(() -> versionConflictOrEmpty(id, updatedMovieInfo.getVersion())))
+                .doOnNext(movieInfoCache::put)
+                .doOnNext(movieInfo -> movieInfoJsonCache.invalidate(id));
+    }
+
+    // what toUpdate does to the stored document
+    private MovieInfo applyUpdate(MovieInfo previousMovieInfo, MovieInfo updatedMovieInfo) {
+        return new MovieInfo(previousMovieInfo.getMovieInfoId(),
+                updatedMovieInfo.getName() != null ? updatedMovieInfo.getName() : previousMovieInfo.getName(),
+                updatedMovieInfo.getYear() != null ? updatedMovieInfo.getYear() : previousMovieInfo.getYear(),
+                updatedMovieInfo.getCast() != null ? updatedMovieInfo.getCast() : previousMovieInfo.getCast(),
+                updatedMovieInfo.getRelease_date() != null ? updatedMovieInfo.getRelease_date() : previousMovieInfo.getRelease_date(),
+                previousMovieInfo.getVersion() == null ? 1L : previousMovieInfo.getVersion() + 1);
+    }
+
+    // keep applyUpdate in step with this
+    private Update toUpdate(MovieInfo updatedMovieInfo) {
+        // do not care about movieInfo's id
+        var update = new Update().inc("version", 1);
+        if (updatedMovieInfo.getName() != null) {
+            update.set("name", updatedMovieInfo.getName());
+        }
+        if (updatedMovieInfo.getYear() != null) {
+            update.set("year", updatedMovieInfo.getYear());
+        }
+        if (updatedMovieInfo.getCast() != null) {
+            update.set("cast", updatedMovieInfo.getCast());
+        }
+        if (updatedMovieInfo.getRelease_date() != null) {
+            update.set("release_date", updatedMovieInfo.getRelease_date());
+        }
+        return update;
+    }
+
+    // documents written before versioning have no version field, they count as version 0
+    private Criteria versionCriteria(Long version) {
+        if (version == 0L) {
+            return Criteria.where("version").in(Arrays.asList(0L, null));
+        }
+        return Criteria.where("version").is(version);
+    }
+
+    // only a failed versioned update needs the extra lookup to tell a conflict from a missing document
+    private Mono<MovieInfo> versionConflictOrEmpty(String id, Long version) {
+        if (version == null) {
+            return Mono.empty();
+        }
+        return movieInfoRepository.existsById(id)
+                .flatMap(exists -> exists
+                        ? Mono.error(new MovieInfoVersionConflictException(
+                                "MovieInfo " + id + " was modified concurrently, expected version " + version))
+                        : Mono.empty());
     }
 
     public Mono<Void> deleteMovieInfoById(String id) {
-        return movieInfoRepository.deleteById(id);
+        // findAndRemove rather than deleteById, so the cast index knows which names to update
+        return reactiveMongoTemplate.findAndRemove(Query.query(Criteria.where("movieInfoId").is(id)), MovieInfo.class)
+                .doOnNext(deletedMovieInfo -> castIndex.onDeleted(id, deletedMovieInfo.getCast()))
+                .doOnTerminate(() -> {
+                    movieInfoCache.invalidate(id);
+                    movieInfoJsonCache.invalidate(id);
+                })
+                .then();
     }
 
     public Flux<MovieInfo> getAllMoviesInfoByYear(Integer year) {
         return movieInfoRepository.findByYear(year);
     }
+
+    /**
+     * Pages through the movies featuring the cast member in id order. The movie ids
+     * come from the in-memory cast index, loaded with one query on a cold name, and
+     * the page's MovieInfos with one $in query. Only names with more movies than the
+     * cast index holds walk the {cast, _id} index in Mongo page by page; an empty
+     * page of an indexed name stays empty.
+     */
+    public Flux<MovieInfo> getAllMoviesInfoByCast(String cast, int page, int size) {
+        return castIndex.get(cast, this::findMovieIdsByCast)
+                .map(movieIds -> findPage(movieIds, page, size))
+                .defaultIfEmpty(Flux.defer(() ->
+                        movieInfoRepository.findByCast(cast, PageRequest.of(page, size, Sort.by("movieInfoId")))))
+                .flatMapMany(movieInfos -> movieInfos);
+    }
+
+    // findAllById does not keep the order of the ids, so the page is sorted again
+    private Flux<MovieInfo> findPage(Collection<String> movieIds, int page, int size) {
+        var pageIds = movieIds.stream()
+                .skip((long) page * size)
+                .limit(size)
+                .collect(Collectors.toList());
+        if (pageIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return movieInfoRepository.findAllById(pageIds)
+                .sort(Comparator.comparing(MovieInfo::getMovieInfoId));
+    }
+
+    // only _id is read, so the query is covered by the {cast, _id} index
+    private Flux<String> findMovieIdsByCast(String cast, int limit) {
+        var query = Query.query(Criteria.where("cast").is(cast))
+                .with(Sort.by("movieInfoId"))
+                .limit(limit);
+        query.fields().include("movieInfoId");
+        return reactiveMongoTemplate.find(query, MovieInfo.class)
+                .map(MovieInfo::getMovieInfoId);
+    }
+
+    /**
+     * Streams the whole catalog straight from a Mongo cursor in _id order.
+     * The cursor fetches batchSize documents per round trip and demand is
+     * requested in the same chunks, so only about one batch is held in memory.
+     * Passing the last exported id resumes the export right after it.
+     */
+    public Flux<MovieInfo> exportMoviesInfo(String lastSeenId, int batchSize) {
+        var query = new Query().with(Sort.by(Sort.Direction.ASC, "movieInfoId"));
+        if (lastSeenId != null) {
+            query.addCriteria(Criteria.where("movieInfoId").gt(lastSeenId));
+        }
+        query.cursorBatchSize(batchSize);
+
+        return reactiveMongoTemplate.find(query, MovieInfo.class)
+                .limitRate(batchSize);
+    }
 }
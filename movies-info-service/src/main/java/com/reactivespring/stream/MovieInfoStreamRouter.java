@@ -0,0 +1,78 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.eventlog.EventLogTopics;
+import com.reactivespring.eventlog.JsonEventLog;
+import com.reactivespring.eventlog.LoggedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * Routes the logged MovieInfos to filtered stream subscribers.
+ * Subscribers are grouped into topics keyed by the year or cast member they filter on,
+ * and every MovieInfo appended to the event log is only emitted to the topics of its
+ * own year and cast members. Fan-out cost therefore follows the number of matching
+ * topics, not the number of subscribers. The history before the live MovieInfos is
+ * read from the event log and filtered for the subscriber, see EventLogTopics.
+ */
+@Component
+public class MovieInfoStreamRouter {
+
+    private EventLogTopics<Object, MovieInfo> topics;
+
+    public MovieInfoStreamRouter(JsonEventLog<MovieInfo> movieInfoEventLog,
+                                 @Value("${moviesinfo.stream.buffer-size:256}") int bufferSize) {
+        this.topics = new EventLogTopics<>(movieInfoEventLog, MovieInfoStreamRouter::keys, bufferSize);
+    }
+
+    @PostConstruct
+    public void start() {
+        topics.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        topics.close();
+    }
+
+    // the matching MovieInfos from fromOffset on, then the live ones
+    public Flux<LoggedEvent<MovieInfo>> subscribe(Integer year, String cast, long fromOffset) {
+        return year != null
+                ? withCast(topics.subscribe(year, fromOffset), cast)
+                : topics.subscribe(cast, fromOffset);
+    }
+
+    // the matching MovieInfos after the one at offset, then the live ones
+    public Flux<LoggedEvent<MovieInfo>> subscribeAfter(Integer year, String cast, long offset) {
+        return year != null
+                ? withCast(topics.subscribeAfter(year, offset), cast)
+                : topics.subscribeAfter(cast, offset);
+    }
+
+    // with both filters, the subscriber joins the year topic and the cast member is checked only for that year's movies
+    private static Flux<LoggedEvent<MovieInfo>> withCast(Flux<LoggedEvent<MovieInfo>> movieInfos, String cast) {
+        return cast == null
+                ? movieInfos
+                : movieInfos.filter(loggedEvent -> loggedEvent.getEvent().getCast() != null
+                        && loggedEvent.getEvent().getCast().contains(cast));
+    }
+
+    // the year and, once each, the cast members; a year and a name never equal each other
+    private static Collection<Object> keys(MovieInfo movieInfo) {
+        var keys = new ArrayList<Object>();
+        if (movieInfo.getYear() != null) {
+            keys.add(movieInfo.getYear());
+        }
+        if (movieInfo.getCast() != null) {
+            keys.addAll(new LinkedHashSet<>(movieInfo.getCast()));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,37 @@
+package com.reactivespring.util;
+
+import com.reactivespring.domain.MovieInfo;
+
+import java.util.List;
+
+public class MovieInfoCsvUtil {
+
+    public static final String HEADER = "movieInfoId,name,year,cast,release_date\n";
+
+    private static final String CAST_SEPARATOR = "|";
+
+    public static String toCsvLine(MovieInfo movieInfo) {
+        return String.join(",",
+                escape(movieInfo.getMovieInfoId()),
+                escape(movieInfo.getName()),
+                movieInfo.getYear() == null ? "" : movieInfo.getYear().toString(),
+                escape(joinCast(movieInfo.getCast())),
+                movieInfo.getRelease_date() == null ? "" : movieInfo.getRelease_date().toString())
+                + "\n";
+    }
+
+    private static String joinCast(List<String> cast) {
+        return cast == null ? null : String.join(CAST_SEPARATOR, cast);
+    }
+
+    // RFC 4180: quote the field if it has a separator, quote or line break, doubling inner quotes
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -1,20 +1,32 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.cache.CastIndex;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.cache.MovieInfoJsonCache;
+import com.reactivespring.domain.CastCount;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.YearCount;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.test.StepVerifier;
 
+import java.net.URI;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,9 +38,27 @@ class MoviesInfoControllerIntgTest {
     @Autowired
     private MovieInfoRepository movieInfoRepository;
 
+    @Autowired
+    private MovieInfoCache movieInfoCache;
+
+    @Autowired
+    private MovieInfoJsonCache movieInfoJsonCache;
+
+    @Autowired
+    private CastIndex castIndex;
+
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RSocketRequester.Builder rSocketRequesterBuilder;
+
+    @LocalServerPort
+    private int port;
+
     @BeforeEach
     void setUp() {
         var movieinfos = List.of(
@@ -43,6 +73,10 @@ class MoviesInfoControllerIntgTest {
                 .block();
         movieInfoRepository.saveAll(movieinfos)
                 .blockLast();
+        // data is reset behind the service's back, so drop anything cached by earlier tests
+        movieInfoCache.invalidateAll();
+        movieInfoJsonCache.invalidateAll();
+        castIndex.invalidateAll();
     }
 
     @AfterEach
@@ -136,6 +170,320 @@ class MoviesInfoControllerIntgTest {
                 .hasSize(1);
     }
 
+    @Test
+    void getAllMoviesInfoByYear_mongoMetrics() {
+        var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URI)
+                .queryParam("year", 2008)
+                .buildAndExpand().toUri();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk();
+
+        // the find is tagged with the repository method that issued it
+        var finds = meterRegistry.get("mongodb.repository.commands")
+                .tags("command", "find", "collection", "movieInfo",
+                        "repository.method", "MovieInfoRepository.findByYear")
+                .timer();
+        assertTrue(finds.count() > 0);
+        var documents = meterRegistry.get("mongodb.repository.documents")
+                .tags("command", "find", "repository.method", "MovieInfoRepository.findByYear")
+                .summary();
+        assertTrue(documents.totalAmount() >= 1);
+    }
+
+    @Test
+    void getAllMoviesInfoByCast() {
+        var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URI)
+                .queryParam("cast", "Christian Bale")
+                .queryParam("page", 1)
+                .queryParam("size", 2)
+                .buildAndExpand().toUri();
+
+        // first lookup walks the index in Mongo, later ones may be served from the cast index
+        for (int i = 0; i < 3; i++) {
+            webTestClient
+                    .get()
+                    .uri(uri)
+                    .exchange()
+                    .expectStatus()
+                    .is2xxSuccessful()
+                    .expectBodyList(MovieInfo.class)
+                    .hasSize(1);
+        }
+    }
+
+    @Test
+    void getAllMoviesInfoByCast_followsAddsAndUpdates() {
+        var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URI)
+                .queryParam("cast", "Tom Hardy")
+                .buildAndExpand().toUri();
+        // loads the name into the cast index
+        webTestClient.get().uri(uri).exchange()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+
+        webTestClient.post().uri(MOVIES_INFO_URI)
+                .bodyValue(new MovieInfo("def", "Inception", 2010,
+                        List.of("Leonardo DiCaprio", "Tom Hardy"), LocalDate.parse("2010-07-16")))
+                .exchange()
+                .expectStatus().isCreated();
+        webTestClient.get().uri(uri).exchange()
+                .expectBodyList(MovieInfo.class)
+                .value(movieInfos -> assertEquals(List.of("abc", "def"),
+                        movieInfos.stream().map(MovieInfo::getMovieInfoId).collect(Collectors.toList())));
+
+        // Tom Hardy is dropped from the cast of abc
+        var update = new MovieInfo();
+        update.setCast(List.of("Christian Bale", "Anne Hathaway"));
+        webTestClient.put().uri(MOVIES_INFO_URI + "/{id}", "abc")
+                .bodyValue(update)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(MovieInfo.class)
+                .value(movieInfo -> {
+                    assertEquals("Dark Knight Rises", movieInfo.getName());
+                    assertEquals(List.of("Christian Bale", "Anne Hathaway"), movieInfo.getCast());
+                });
+        webTestClient.get().uri(uri).exchange()
+                .expectBodyList(MovieInfo.class)
+                .value(movieInfos -> assertEquals(List.of("def"),
+                        movieInfos.stream().map(MovieInfo::getMovieInfoId).collect(Collectors.toList())));
+
+        var anneHathaway = UriComponentsBuilder.fromUriString(MOVIES_INFO_URI)
+                .queryParam("cast", "Anne Hathaway")
+                .buildAndExpand().toUri();
+        webTestClient.get().uri(anneHathaway).exchange()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getAllMoviesInfoByCast_emptyPageOfAnIndexedName() {
+        var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URI)
+                .queryParam("cast", "Tom Hardy")
+                .queryParam("page", 5)
+                .buildAndExpand().toUri();
+        var findByCast = meterRegistry.find("mongodb.repository.commands")
+                .tags("repository.method", "MovieInfoRepository.findByCast")
+                .timer();
+        var findByCastBefore = findByCast == null ? 0 : findByCast.count();
+
+        webTestClient.get().uri(uri).exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(0);
+
+        // the name is in the cast index, so Mongo is not paged through for it
+        findByCast = meterRegistry.find("mongodb.repository.commands")
+                .tags("repository.method", "MovieInfoRepository.findByCast")
+                .timer();
+        assertEquals(findByCastBefore, findByCast == null ? 0 : findByCast.count());
+    }
+
+    @Test
+    void addMovieInfo_replacesAnExistingMovie() {
+        var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URI)
+                .queryParam("cast", "Tom Hardy")
+                .buildAndExpand().toUri();
+        // loads the name into the cast index and the movie into the JSON cache
+        webTestClient.get().uri(uri).exchange()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+        webTestClient.get().uri(MOVIES_INFO_URI + "/{id}", "abc").exchange()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises");
+
+        webTestClient.post().uri(MOVIES_INFO_URI)
+                .bodyValue(new MovieInfo("abc", "The Dark Knight Rises", 2012,
+                        List.of("Christian Bale", "Anne Hathaway"), LocalDate.parse("2012-07-20")))
+                .exchange()
+                .expectStatus().isCreated();
+
+        webTestClient.get().uri(uri).exchange()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(0);
+        webTestClient.get().uri(MOVIES_INFO_URI + "/{id}", "abc").exchange()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("The Dark Knight Rises");
+    }
+
+    @Test
+    void getMoviesInfoByIds() {
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URI)
+                        .queryParam("ids", "def,abc")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfoLookup.class)
+                .value(lookups -> {
+                    assertEquals(2, lookups.size());
+                    assertEquals("def", lookups.get(0).getMovieInfoId());
+                    assertFalse(lookups.get(0).isFound());
+                    assertEquals("abc", lookups.get(1).getMovieInfoId());
+                    assertTrue(lookups.get(1).isFound());
+                    assertEquals("Dark Knight Rises", lookups.get(1).getMovieInfo().getName());
+                });
+    }
+
+    @Test
+    void getMoviesInfoByIds_postBody() {
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URI + "/ids")
+                .bodyValue(List.of("abc", "def", "abc"))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfoLookup.class)
+                .value(lookups -> {
+                    assertEquals(3, lookups.size());
+                    assertTrue(lookups.get(0).isFound());
+                    assertFalse(lookups.get(1).isFound());
+                    assertTrue(lookups.get(2).isFound());
+                });
+    }
+
+    @Test
+    void exportMoviesInfo() {
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URI + "/export")
+                        .queryParam("batchSize", 2)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(3);
+    }
+
+    @Test
+    void exportMoviesInfo_resumesAfterLastSeenId() {
+        var firstBatch = webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URI + "/export")
+                        .queryParam("batchSize", 1)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfo.class)
+                .getResponseBody()
+                .take(2)
+                .collectList()
+                .block();
+        assertEquals(2, firstBatch.size());
+
+        // a client that lost the connection resumes from the last id it received, the export is in id order
+        var lastSeenId = firstBatch.get(1).getMovieInfoId();
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URI + "/export")
+                        .queryParam("lastSeenId", lastSeenId)
+                        .queryParam("batchSize", 100_000)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .value(movieInfos -> {
+                    assertEquals(1, movieInfos.size());
+                    assertTrue(firstBatch.stream().noneMatch(movieInfo ->
+                            movieInfo.getMovieInfoId().equals(movieInfos.get(0).getMovieInfoId())));
+                });
+    }
+
+    @Test
+    void exportMoviesInfo_csv() {
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URI + "/export")
+                        .queryParam("format", "csv")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(String.class)
+                .consumeWith(stringEntityExchangeResult -> {
+                    var csv = stringEntityExchangeResult.getResponseBody();
+                    assert csv != null;
+                    var lines = csv.split("\n");
+                    assertEquals(4, lines.length);
+                    assertEquals("movieInfoId,name,year,cast,release_date", lines[0]);
+                });
+    }
+
+    @Test
+    void getYearCounts() {
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URI + "/facets/years")
+                        .queryParam("fromYear", 2006)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(YearCount.class)
+                .isEqualTo(List.of(new YearCount(2008, 1L), new YearCount(2012, 1L)));
+    }
+
+    @Test
+    void getTopCast() {
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URI + "/facets/cast")
+                        .queryParam("limit", 2)
+                        .queryParam("fromYear", 1900)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(CastCount.class)
+                .isEqualTo(List.of(new CastCount("Christian Bale", 3L), new CastCount("HeathLedger", 1L)));
+    }
+
+    @Test
+    void getTopCast_updatedByAddedMovieInfo() {
+        // a filter no other test uses, so the cached entry is only touched by this test
+        var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URI + "/facets/cast")
+                .queryParam("limit", 3)
+                .queryParam("toYear", 2030)
+                .buildAndExpand().toUri();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectBodyList(CastCount.class)
+                .hasSize(3);
+
+        var movieInfo = new MovieInfo(null, "Batman Begins Again",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URI)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(CastCount.class)
+                .isEqualTo(List.of(new CastCount("Christian Bale", 4L),
+                        new CastCount("Michael Cane", 2L), new CastCount("HeathLedger", 1L)));
+    }
+
     @Test
     void getMovieInfoById() {
         var movieId = "abc";
@@ -154,6 +502,46 @@ class MoviesInfoControllerIntgTest {
                 .jsonPath("$.name").isEqualTo("Dark Knight Rises");
     }
 
+    @Test
+    void getMovieInfoById_servedFromJsonCache() {
+        var movieId = "abc";
+        var hits = meterRegistry.get("cache.gets")
+                .tags("cache", "movieInfoJsonById", "result", "hit")
+                .functionCounter();
+        var hitsBefore = hits.count();
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient
+                    .get()
+                    .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                    .exchange()
+                    .expectStatus()
+                    .is2xxSuccessful()
+                    .expectHeader()
+                    .contentType("application/json")
+                    .expectBody()
+                    .jsonPath("$.name").isEqualTo("Dark Knight Rises")
+                    .jsonPath("$.release_date").isEqualTo("2012-07-20");
+        }
+
+        assertEquals(hitsBefore + 1, hits.count());
+    }
+
+    @Test
+    void getMovieInfoById_rsocket() {
+        var requester = rSocketRequesterBuilder
+                .websocket(URI.create("ws://localhost:" + port + "/rsocket"));
+
+        var movieInfoMono = requester
+                .route("moviesinfo.{id}", "abc")
+                .retrieveMono(MovieInfo.class);
+
+        StepVerifier.create(movieInfoMono)
+                .assertNext(movieInfo -> assertEquals("Dark Knight Rises", movieInfo.getName()))
+                .verifyComplete();
+        requester.dispose();
+    }
+
     @Test
     void getMovieInfoById_notFound() {
         var movieId = "def";
@@ -187,6 +575,94 @@ class MoviesInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void updateMovieInfo_refreshesCachedMovieInfo() {
+        var movieId = "abc";
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises - Updated",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        // warm the cache with the original document
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                .exchange()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises");
+
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises - Updated");
+    }
+
+    @Test
+    void deleteMovieInfoById_evictsCachedMovieInfo() {
+        var movieId = "abc";
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        webTestClient
+                .delete()
+                .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
+    @Test
+    void updateMovieInfo_versionConflict() {
+        var movieId = "abc";
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises - Updated",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 0L);
+
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var updatedMovieInfo = movieInfoEntityExchangeResult.getResponseBody();
+                    assert updatedMovieInfo != null;
+                    assertEquals(1L, updatedMovieInfo.getVersion());
+                });
+
+        // a second writer still holding version 0 must not overwrite the first update
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URI + "/{id}", movieId)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
     @Test
     void updateMovieInfo_notFound() {
         var movieId = "def";
@@ -7,6 +7,8 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import reactor.test.StepVerifier;
 
@@ -72,6 +74,17 @@ class MovieInfoRepositoryIntegrationTest {
                 .verifyComplete();
     }
 
+    @Test
+    void findByCast() {
+        // when
+        var moviesInfoFlux = movieInfoRepository.findByCast("Christian Bale",
+                PageRequest.of(0, 2, Sort.by("movieInfoId")));
+        // then
+        StepVerifier.create(moviesInfoFlux)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
     @Test
     void findById() {
         // when
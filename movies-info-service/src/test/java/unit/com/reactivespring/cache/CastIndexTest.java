@@ -0,0 +1,98 @@
+package com.reactivespring.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CastIndexTest {
+
+    private CastIndex castIndex = new CastIndex(100, Duration.ofMinutes(10), 3);
+
+    @Test
+    void loadsAColdNameOnceWithALimitedQuery() {
+        var loads = new AtomicInteger();
+        var limits = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            var movieIds = castIndex.get("Tom Hardy", (cast, limit) -> {
+                loads.incrementAndGet();
+                limits.set(limit);
+                return Flux.just("abc", "def");
+            }).block();
+            assertEquals(List.of("abc", "def"), List.copyOf(movieIds));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(4, limits.get());
+    }
+
+    @Test
+    void leavesNamesWithTooManyMoviesToMongo() {
+        var loads = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            var movieIds = castIndex.get("Michael Caine", (cast, limit) -> {
+                loads.incrementAndGet();
+                return Flux.just("1", "2", "3", "4");
+            }).block();
+            assertNull(movieIds);
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void followsTheCastListsOfSavedAndDeletedMovies() {
+        castIndex.get("Tom Hardy", (cast, limit) -> Flux.just("abc")).block();
+        castIndex.get("Christian Bale", (cast, limit) -> Flux.just("abc")).block();
+
+        castIndex.onSaved("def", null, List.of("Tom Hardy", "Leonardo DiCaprio"));
+        castIndex.onSaved("abc", List.of("Christian Bale", "Tom Hardy"), List.of("Christian Bale"));
+
+        assertEquals(List.of("def"), List.copyOf(castIndex.get("Tom Hardy", (cast, limit) -> Flux.empty()).block()));
+        assertEquals(List.of("abc"), List.copyOf(castIndex.get("Christian Bale", (cast, limit) -> Flux.empty()).block()));
+
+        castIndex.onDeleted("abc", List.of("Christian Bale"));
+
+        assertTrue(castIndex.get("Christian Bale", (cast, limit) -> Flux.empty()).block().isEmpty());
+    }
+
+    @Test
+    void stopsIndexingANameThatGrowsPastTheCap() {
+        castIndex.get("Tom Hardy", (cast, limit) -> Flux.just("1", "2", "3")).block();
+
+        castIndex.onSaved("4", null, List.of("Tom Hardy"));
+
+        assertNull(castIndex.get("Tom Hardy", (cast, limit) -> Flux.just("1", "2", "3", "4")).block());
+    }
+
+    @Test
+    void invalidatesTheNamesOfAMovieChangedElsewhere() {
+        castIndex.get("Tom Hardy", (cast, limit) -> Flux.just("abc")).block();
+        castIndex.get("Christian Bale", (cast, limit) -> Flux.just("def")).block();
+        castIndex.get("Anne Hathaway", (cast, limit) -> Flux.just("ghi")).block();
+
+        // abc left Tom Hardy's movies and joined Christian Bale's
+        castIndex.invalidate("abc", List.of("Christian Bale"));
+
+        var loads = new AtomicInteger();
+        castIndex.get("Tom Hardy", (cast, limit) -> {
+            loads.incrementAndGet();
+            return Flux.empty();
+        }).block();
+        castIndex.get("Christian Bale", (cast, limit) -> {
+            loads.incrementAndGet();
+            return Flux.just("abc", "def");
+        }).block();
+        castIndex.get("Anne Hathaway", (cast, limit) -> {
+            loads.incrementAndGet();
+            return Flux.empty();
+        }).block();
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,133 @@
+package com.reactivespring.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieInfoJsonCacheTest {
+
+    private ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private AtomicInteger loads = new AtomicInteger();
+
+    private MovieInfoJsonCache newCache(DataSize maxSize) {
+        return new MovieInfoJsonCache(objectMapper, maxSize, Duration.ofMinutes(10), new SimpleMeterRegistry(),
+                Caffeine.newBuilder().executor(Runnable::run));
+    }
+
+    private Mono<MovieInfo> load(String id) {
+        loads.incrementAndGet();
+        return Mono.just(new MovieInfo(id, "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+    }
+
+    private static String toString(ByteBuffer json) {
+        var bytes = new byte[json.remaining()];
+        json.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void encodesOnceAndServesTheBytes() throws Exception {
+        var cache = newCache(DataSize.ofMegabytes(1));
+
+        var first = toString(cache.get("abc", this::load).block());
+        var second = toString(cache.get("abc", this::load).block());
+
+        assertEquals(objectMapper.writeValueAsString(load("abc").block()), first);
+        assertEquals(first, second);
+        // one load per get above plus the one building the expected value
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    void readersDoNotShareAPosition() {
+        var cache = newCache(DataSize.ofMegabytes(1));
+        cache.get("abc", this::load).block();
+
+        var first = cache.get("abc", this::load).block();
+        first.position(first.limit());
+
+        assertTrue(cache.get("abc", this::load).block().hasRemaining());
+    }
+
+    @Test
+    void invalidateEncodesAgain() {
+        var cache = newCache(DataSize.ofMegabytes(1));
+        cache.get("abc", this::load).block();
+
+        cache.invalidate("abc");
+        cache.get("abc", this::load).block();
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    void invalidateWhileEncodingDropsTheEncoding() {
+        var cache = newCache(DataSize.ofMegabytes(1));
+
+        cache.get("abc", id -> load(id).doOnNext(movieInfo -> cache.invalidate(id))).block();
+        cache.get("abc", this::load).block();
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    void invalidateOfAnotherMovieKeepsTheEncoding() {
+        var cache = newCache(DataSize.ofMegabytes(1));
+
+        cache.get("abc", id -> load(id).doOnNext(movieInfo -> cache.invalidate("def"))).block();
+        cache.get("abc", this::load).block();
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    void invalidateAllWhileEncodingDropsTheEncoding() {
+        var cache = newCache(DataSize.ofMegabytes(1));
+
+        cache.get("abc", id -> load(id).doOnNext(movieInfo -> cache.invalidateAll())).block();
+        cache.get("abc", this::load).block();
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    void missingIdsAreNotCached() {
+        var cache = newCache(DataSize.ofMegabytes(1));
+
+        assertNull(cache.get("def", id -> Mono.empty()).block());
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    void evictsBeyondTheByteBudget() {
+        var entrySize = newCache(DataSize.ofMegabytes(1)).get("id-0", this::load).block().remaining();
+        var cache = newCache(DataSize.ofBytes(entrySize * 3L));
+
+        for (int i = 0; i < 10; i++) {
+            cache.get("id-" + i, this::load).block();
+        }
+
+        assertTrue(cache.weightedSize() <= entrySize * 3L);
+        assertTrue(cache.weightedSize() > 0);
+    }
+}
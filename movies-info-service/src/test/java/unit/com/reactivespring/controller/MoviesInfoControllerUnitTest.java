@@ -1,7 +1,12 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.CastCount;
+import com.reactivespring.domain.FacetFilter;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.eventlog.JsonEventLog;
+import com.reactivespring.service.MovieInfoFacetService;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.stream.MovieInfoStreamRouter;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
@@ -12,6 +17,8 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -27,6 +34,15 @@ class MoviesInfoControllerUnitTest {
     @MockBean
     private MoviesInfoService moviesInfoServiceMock;
 
+    @MockBean
+    private MovieInfoFacetService movieInfoFacetServiceMock;
+
+    @MockBean
+    private MovieInfoStreamRouter movieInfoStreamRouterMock;
+
+    @MockBean
+    private JsonEventLog<MovieInfo> movieInfoEventLogMock;
+
     static String MOVIES_INFO_URI = "/v1/moviesinfo";
 
     @Test
@@ -57,9 +73,10 @@ class MoviesInfoControllerUnitTest {
     void getMovieInfoById() {
         var id = "abc";
 
-        when(moviesInfoServiceMock.getMovieInfoById(id))
-                .thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises",
-                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))));
+        when(moviesInfoServiceMock.getMovieInfoJsonById(id))
+                .thenReturn(Mono.just(ByteBuffer.wrap(
+                        "{\"movieInfoId\":\"abc\",\"name\":\"Dark Knight Rises\",\"year\":2012}"
+                                .getBytes(StandardCharsets.UTF_8))));
 
         webTestClient
                 .get()
@@ -144,6 +161,25 @@ class MoviesInfoControllerUnitTest {
                 });
     }
 
+    @Test
+    void getTopCast_limitIsBounded() {
+        when(movieInfoFacetServiceMock.getTopCast(isA(FacetFilter.class)))
+                .thenReturn(Mono.just(List.of(new CastCount("Christian Bale", 3L))));
+
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URI + "/facets/cast")
+                        .queryParam("limit", 100000)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(CastCount.class)
+                .hasSize(1);
+
+        verify(movieInfoFacetServiceMock).getTopCast(new FacetFilter(null, null, null, 100));
+    }
+
     @Test
     void deleteMovieInfoById() {
         var id = "abc";
@@ -159,4 +195,15 @@ class MoviesInfoControllerUnitTest {
                 .isNoContent();
     }
 
-}
\ No newline at end of file
+    @Test
+    void getMovieStream_unknownOffset() {
+        when(movieInfoEventLogMock.isValidOffset(42L)).thenReturn(false);
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URI + "/stream?fromOffset=42")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+}
@@ -0,0 +1,43 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.FacetFilter;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.YearCount;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MovieInfoFacetServiceTest {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+    private MovieInfoFacetService movieInfoFacetService =
+            new MovieInfoFacetService(reactiveMongoTemplate, Duration.ofMinutes(1), 100);
+
+    @Test
+    void newMovieInfoIsCountedNextToANullYearGroup() {
+        var filter = new FacetFilter(null, null, null, null);
+        // documents written before the year was validated are grouped under a null year
+        when(reactiveMongoTemplate.aggregate(any(TypedAggregation.class), eq(YearCount.class)))
+                .thenReturn(Flux.just(new YearCount(null, 2L), new YearCount(2005, 1L)));
+        movieInfoFacetService.getYearCounts(filter).block();
+
+        movieInfoFacetService.onMovieInfoAdded(new MovieInfo("1", "Batman Begins", 2005,
+                List.of("Christian Bale"), LocalDate.parse("2005-06-15")));
+        movieInfoFacetService.onMovieInfoAdded(new MovieInfo("2", "Dark Knight Rises", 2012,
+                List.of("Christian Bale"), LocalDate.parse("2012-07-20")));
+
+        assertEquals(List.of(new YearCount(null, 2L), new YearCount(2005, 2L), new YearCount(2012, 1L)),
+                movieInfoFacetService.getYearCounts(filter).block());
+    }
+}
@@ -0,0 +1,104 @@
+package com.reactivespring.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.eventlog.JsonEventLog;
+import com.reactivespring.eventlog.LoggedEvent;
+import com.reactivespring.eventlog.MappedEventLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+class MovieInfoStreamRouterTest {
+
+    @TempDir
+    Path dir;
+
+    private JsonEventLog<MovieInfo> movieInfoEventLog;
+    private MovieInfoStreamRouter movieInfoStreamRouter;
+
+    private MovieInfo batmanBegins = new MovieInfo("1", "Batman Begins",
+            2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+    private MovieInfo darkKnight = new MovieInfo("2", "The Dark Knight",
+            2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18"));
+    private MovieInfo prestige = new MovieInfo("3", "The Prestige",
+            2006, List.of("Hugh Jackman", "Michael Cane"), LocalDate.parse("2006-10-20"));
+    private MovieInfo ironMan = new MovieInfo("4", "Iron Man",
+            2008, List.of("Robert Downey Jr.", "Gwyneth Paltrow"), LocalDate.parse("2008-05-02"));
+
+    @BeforeEach
+    void setUp() throws IOException {
+        var eventLog = new MappedEventLog(dir, 64 * 1024, Duration.ofSeconds(1), 1024 * 1024, Duration.ofDays(1));
+        movieInfoEventLog = new JsonEventLog<>(eventLog, new ObjectMapper().registerModule(new JavaTimeModule()),
+                MovieInfo.class, new SimpleMeterRegistry(), 16);
+        movieInfoStreamRouter = new MovieInfoStreamRouter(movieInfoEventLog, 16);
+        movieInfoStreamRouter.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoStreamRouter.stop();
+        movieInfoEventLog.close();
+    }
+
+    @Test
+    void subscribeByYear_historyThenLive() {
+        List.of(batmanBegins, darkKnight, prestige).forEach(movieInfoEventLog::append);
+
+        StepVerifier.create(movieInfoStreamRouter.subscribe(2008, null, movieInfoEventLog.earliestOffset())
+                        .map(LoggedEvent::getEvent))
+                .expectNext(darkKnight)
+                .then(() -> List.of(batmanBegins, ironMan).forEach(movieInfoEventLog::append))
+                .expectNext(ironMan)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void subscribeByCast_fromOffset() {
+        movieInfoEventLog.append(batmanBegins);
+        var fromOffset = movieInfoEventLog.append(darkKnight);
+        movieInfoEventLog.append(prestige);
+
+        StepVerifier.create(movieInfoStreamRouter.subscribe(null, "Michael Cane", fromOffset)
+                        .map(LoggedEvent::getEvent))
+                .expectNext(prestige)
+                .then(() -> movieInfoEventLog.append(batmanBegins))
+                .expectNext(batmanBegins)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void subscribeAfter_skipsTheLastSeenMovie() {
+        var lastEventId = movieInfoEventLog.append(darkKnight);
+
+        StepVerifier.create(movieInfoStreamRouter.subscribeAfter(2008, null, lastEventId)
+                        .map(LoggedEvent::getEvent))
+                .then(() -> movieInfoEventLog.append(ironMan))
+                .expectNext(ironMan)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void subscribeByYearAndCast() {
+        List.of(batmanBegins, darkKnight).forEach(movieInfoEventLog::append);
+
+        StepVerifier.create(movieInfoStreamRouter.subscribe(2006, "Christian Bale", movieInfoEventLog.earliestOffset()))
+                .then(() -> movieInfoEventLog.append(prestige))
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify();
+    }
+}
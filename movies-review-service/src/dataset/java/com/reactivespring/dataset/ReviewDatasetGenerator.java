@@ -0,0 +1,64 @@
+package com.reactivespring.dataset;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.repository.ReviewSummaryRepositoryCustomImpl;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.SplittableRandom;
+
+/**
+ * Writes dataset.reviews Reviews of the MovieInfos 1..dataset.movieInfos.
+ * <ul>
+ *     <li>The movie of a review is drawn by a Zipf distribution over the movie ids
+ *     (dataset.popularity-skew, 1.0): movie 1 is the most reviewed, a long tail of
+ *     movies have a handful of reviews or none.</li>
+ *     <li>Ratings lean towards the top of the scale in half points, the way
+ *     people who bother to review rate.</li>
+ *     <li>Reviews were written over the ten years before 2024.</li>
+ * </ul>
+ * The ReviewSummaries are recomputed afterwards, so the service can be pointed
+ * at the dataset as it is.
+ */
+public class ReviewDatasetGenerator {
+
+    private static final Instant LATEST = Instant.parse("2024-01-01T00:00:00Z");
+    private static final long PERIOD_SECONDS = Duration.ofDays(3650).getSeconds();
+
+    private static final String[] OPENINGS = {"Awesome Movie", "Excellent Movie", "Not bad at all", "A slow start",
+            "Overrated", "Better than the book", "A must see", "Fell asleep halfway", "Stunning to look at",
+            "Great cast"};
+    private static final String[] CLOSINGS = {"would watch again.", "the ending is worth it.",
+            "the soundtrack carries it.", "too long by half an hour.", "the lead is outstanding.",
+            "bring the whole family.", "the sequel is better.", "nothing new though."};
+
+    public static void main(String[] args) throws Exception {
+        var movieInfos = DatasetSettings.count("movieInfos", 100_000);
+        var reviews = DatasetSettings.count("reviews", 1_000_000);
+        var popularity = new Zipf(movieInfos, DatasetSettings.doubleValue("popularity-skew", 1.0));
+
+        try (var datasetMongo = DatasetMongo.start()) {
+            var reactiveMongoTemplate = datasetMongo.reactiveMongoTemplate();
+            new BulkLoader(reactiveMongoTemplate)
+                    .load(Review.class, reviews, (index, random) -> review(index + 1, random, popularity));
+
+            var reviewSummaryRepository = new ReactiveMongoRepositoryFactory(reactiveMongoTemplate)
+                    .getRepository(ReviewSummaryRepository.class, RepositoryComposition.RepositoryFragments.just(
+                            new ReviewSummaryRepositoryCustomImpl(reactiveMongoTemplate)));
+            var summaries = reviewSummaryRepository.recomputeAll().block();
+            System.out.printf("Recomputed %,d ReviewSummaries%n", summaries);
+        }
+    }
+
+    private static Review review(long id, SplittableRandom random, Zipf popularity) {
+        var comment = OPENINGS[random.nextInt(OPENINGS.length)] + ", " + CLOSINGS[random.nextInt(CLOSINGS.length)];
+        // a power below 1 pushes uniform numbers towards 1, and so ratings towards 10
+        var rating = Math.round((1 + 9 * Math.pow(random.nextDouble(), 0.6)) * 2) / 2.0;
+        var createdAt = LATEST.minusSeconds(random.nextLong(PERIOD_SECONDS));
+
+        return new Review(String.valueOf(id), popularity.next(random), comment, rating, null, createdAt);
+    }
+}
@@ -0,0 +1,60 @@
+package com.reactivespring.dataset;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewReactiveRepositoryCustomImpl;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.repository.ReviewSummaryRepositoryCustomImpl;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+
+import java.util.SplittableRandom;
+
+/**
+ * findAllByMovieInfoId and findAll of ReviewReactiveRepository on the generated
+ * Reviews, first without any index but _id's, then with the indexes Review
+ * declares, whose movieInfoId prefix serves findAllByMovieInfoId. Movies are
+ * picked by the same Zipf distribution the reviews were generated with, so
+ * most calls return the long review lists of popular movies, as in production.
+ * dataset.benchmark.lookups (1000) calls are made to indexed lookups,
+ * dataset.benchmark.scans (10) to the ones that read the whole collection.
+ */
+public class ReviewRepositoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var movieInfos = DatasetSettings.count("movieInfos", 100_000);
+        var lookups = DatasetSettings.intValue("benchmark.lookups", 1000);
+        var scans = DatasetSettings.intValue("benchmark.scans", 10);
+
+        try (var datasetMongo = DatasetMongo.start()) {
+            var reactiveMongoTemplate = datasetMongo.reactiveMongoTemplate();
+            var repositoryFactory = new ReactiveMongoRepositoryFactory(reactiveMongoTemplate);
+            var reviewSummaryRepository = repositoryFactory.getRepository(ReviewSummaryRepository.class,
+                    RepositoryComposition.RepositoryFragments.just(new ReviewSummaryRepositoryCustomImpl(reactiveMongoTemplate)));
+            var reviewReactiveRepository = repositoryFactory.getRepository(ReviewReactiveRepository.class,
+                    RepositoryComposition.RepositoryFragments.just(
+                            new ReviewReactiveRepositoryCustomImpl(reactiveMongoTemplate, reviewSummaryRepository, 4)));
+            var reviews = reactiveMongoTemplate.count(new Query(), Review.class).block();
+            if (reviews == 0) {
+                throw new IllegalStateException("There are no Reviews, run generateDataset first");
+            }
+            var popularity = new Zipf(movieInfos, DatasetSettings.doubleValue("popularity-skew", 1.0));
+            // calls run concurrently, so each draws from a random of its own seeded from its index
+            var seed = DatasetSettings.count("seed", 42);
+
+            var benchmark = new RepositoryBenchmark(String.format("movies-review-service, %,d Reviews of %,d MovieInfos", reviews, movieInfos));
+            var indexOps = reactiveMongoTemplate.indexOps(Review.class);
+            indexOps.dropAllIndexes().block();
+            benchmark.run("findAllByMovieInfoId, no index", scans,
+                    call -> reviewReactiveRepository.findAllByMovieInfoId(popularity.next(new SplittableRandom(seed * 31 + call))));
+            benchmark.run("findAll", scans, call -> reviewReactiveRepository.findAll());
+
+            BulkLoader.ensureDeclaredIndexes(reactiveMongoTemplate, Review.class);
+            benchmark.run("findAllByMovieInfoId, indexed", lookups,
+                    call -> reviewReactiveRepository.findAllByMovieInfoId(popularity.next(new SplittableRandom(seed * 31 + call))));
+
+            benchmark.report("movies-review-service.txt");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.reactivespring.benchmark;
+
+import com.reactivespring.dataset.DatasetMongo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.repository.ReviewSummaryRepositoryCustomImpl;
+import com.reactivespring.repository.ReviewWriteCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /v1/reviews inserts per second, one by one versus coalesced into
+ * insertMany batches, with 64 concurrent writers spread over 1000 movies. Each
+ * insert includes its ReviewSummary update, as in the service. Runs against the
+ * dataset tooling's MongoDB (see DatasetMongo) in the write-benchmark database,
+ * which is emptied first. Run with ./gradlew jmh -PjmhIncludes=ReviewWriteCoalescer,
+ * the gc profiler's gc.alloc.rate.norm is the allocation per review.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(64)
+@Fork(1)
+public class ReviewWriteCoalescerBenchmark {
+
+    private static final int MOVIE_INFOS = 1000;
+
+    @Param({"false", "true"})
+    private boolean batched;
+
+    private DatasetMongo datasetMongo;
+    private ReviewWriteCoalescer reviewWriteCoalescer;
+
+    @Setup
+    public void setUp() throws Exception {
+        datasetMongo = DatasetMongo.start();
+        var reactiveMongoTemplate = datasetMongo.reactiveMongoTemplate("write-benchmark");
+        reactiveMongoTemplate.dropCollection(Review.class).block();
+        reactiveMongoTemplate.dropCollection(ReviewSummary.class).block();
+
+        var repositoryFactory = new ReactiveMongoRepositoryFactory(reactiveMongoTemplate);
+        var reviewSummaryRepository = repositoryFactory.getRepository(ReviewSummaryRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new ReviewSummaryRepositoryCustomImpl(reactiveMongoTemplate)));
+        reviewWriteCoalescer = new ReviewWriteCoalescer(reviewSummaryRepository,
+                reactiveMongoTemplate, new SimpleMeterRegistry(), batched, 100, Duration.ofMillis(5), 4,
+                10_000, Duration.ofSeconds(10), "acknowledged");
+    }
+
+    @TearDown
+    public void tearDown() {
+        reviewWriteCoalescer.stop();
+        datasetMongo.close();
+    }
+
+    @Benchmark
+    public Review insert() {
+        var movieInfoId = ThreadLocalRandom.current().nextLong(1, MOVIE_INFOS + 1);
+        return reviewWriteCoalescer.insert(new Review(null, movieInfoId, "Benchmark review", 8.0)).block();
+    }
+}
@@ -0,0 +1,50 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.Review;
+import com.reactivespring.eventlog.EventLogTopics;
+import com.reactivespring.eventlog.JsonEventLog;
+import com.reactivespring.eventlog.MappedEventLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The on-disk log that /v1/reviews/stream replays from when given an offset, so
+ * the stream's history survives restarts and is not held on the heap, and the
+ * per-movie topics its movieInfoId subscribers switch to once they are replayed.
+ */
+@Configuration
+public class EventLogConfig {
+
+    @Bean(destroyMethod = "close")
+    public JsonEventLog<Review> reviewEventLog(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${reviews.event-log.dir:data/event-log}") String dir,
+            @Value("${reviews.event-log.segment-size:64MB}") DataSize segmentSize,
+            @Value("${reviews.event-log.flush-interval:1s}") Duration flushInterval,
+            @Value("${reviews.event-log.retention-size:1GB}") DataSize retentionSize,
+            @Value("${reviews.event-log.retention-age:7d}") Duration retentionAge,
+            @Value("${reviews.event-log.append-queue-size:10000}") int appendQueueSize) throws IOException {
+        var eventLog = new MappedEventLog(Path.of(dir), Math.toIntExact(segmentSize.toBytes()), flushInterval,
+                retentionSize.toBytes(), retentionAge);
+        return new JsonEventLog<>(eventLog, objectMapper, Review.class, meterRegistry, appendQueueSize);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public EventLogTopics<Long, Review> reviewEventLogTopics(
+            JsonEventLog<Review> reviewEventLog,
+            @Value("${reviews.stream.buffer-size:256}") int bufferSize) {
+        return new EventLogTopics<>(reviewEventLog, review -> review.getMovieInfoId() == null
+                ? List.of()
+                : List.of(review.getMovieInfoId()), bufferSize);
+    }
+}
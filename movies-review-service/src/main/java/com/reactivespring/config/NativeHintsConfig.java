@@ -0,0 +1,30 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.domain.TrendingMovie;
+import com.reactivespring.repository.ReviewReactiveRepositoryCustomImpl;
+import com.reactivespring.repository.ReviewSummaryRepositoryCustomImpl;
+import com.reactivespring.stream.StreamErrorEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.nativex.hint.NativeHint;
+import org.springframework.nativex.hint.ResourceHint;
+import org.springframework.nativex.hint.TypeAccess;
+import org.springframework.nativex.hint.TypeHint;
+
+/**
+ * Native image hints for what Spring AOT cannot infer. ReviewRouter's handlers
+ * read and write their bodies through ServerRequest/ServerResponse, so the Review,
+ * MovieReviews, ReviewSummary, TrendingMovie and StreamErrorEvent payloads are not
+ * visible from any method signature, and the custom repository fragments are
+ * instantiated reflectively by Spring Data.
+ */
+@NativeHint(
+        types = @TypeHint(types = {Review.class, MovieReviews.class, ReviewSummary.class, TrendingMovie.class,
+                StreamErrorEvent.class, ReviewReactiveRepositoryCustomImpl.class, ReviewSummaryRepositoryCustomImpl.class},
+                access = {TypeAccess.DECLARED_CONSTRUCTORS, TypeAccess.DECLARED_FIELDS, TypeAccess.DECLARED_METHODS}),
+        resources = @ResourceHint(patterns = "application-.*\\.yml"))
+@Configuration
+public class NativeHintsConfig {
+}
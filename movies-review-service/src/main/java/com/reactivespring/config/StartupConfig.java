@@ -0,0 +1,24 @@
+package com.reactivespring.config;
+
+import com.reactivespring.eventlog.EventLogTopics;
+import com.reactivespring.eventlog.JsonEventLog;
+import com.reactivespring.stream.ReviewStreamPublisher;
+import com.reactivespring.stream.ReviewTrendTracker;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The startup profile (application-startup.yml) creates beans on first use.
+ * Beans that register meters or start background work when they are created
+ * stay eager, so they behave the same with and without the profile.
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerStartupBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(ReviewStreamPublisher.class, ReviewTrendTracker.class,
+                JsonEventLog.class, EventLogTopics.class);
+    }
+}
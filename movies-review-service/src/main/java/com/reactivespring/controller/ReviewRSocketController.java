@@ -0,0 +1,68 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewDataException;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.stream.ReviewStreamPublisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * RSocket routes next to the functional HTTP routes in ReviewRouter,
+ * served over TCP and over WebSocket at /rsocket.
+ */
+@Controller
+public class ReviewRSocketController {
+
+    private ReviewReactiveRepository reviewReactiveRepository;
+    private ReviewStreamPublisher reviewStreamPublisher;
+
+    @Value("${reviews.multi-get.max-ids:1000}")
+    private int multiGetMaxIds;
+
+    public ReviewRSocketController(ReviewReactiveRepository reviewReactiveRepository,
+                                   ReviewStreamPublisher reviewStreamPublisher) {
+        this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewStreamPublisher = reviewStreamPublisher;
+    }
+
+    @MessageMapping("reviews.{id}")
+    public Mono<Review> getReviewById(@DestinationVariable String id) {
+        return reviewReactiveRepository.findById(id);
+    }
+
+    @MessageMapping("reviews.movie.{movieInfoId}")
+    public Flux<Review> getReviewsByMovieInfoId(@DestinationVariable Long movieInfoId) {
+        return reviewReactiveRepository.findAllByMovieInfoId(movieInfoId);
+    }
+
+    // bounded by reviews.multi-get.max-ids like POST /v1/reviews/movies
+    @MessageMapping("reviews.movies")
+    public Flux<MovieReviews> getReviewsByMovieInfoIds(List<Long> movieInfoIds) {
+        var distinctIds = movieInfoIds.stream().distinct().collect(Collectors.toList());
+        if (distinctIds.size() > multiGetMaxIds) {
+            return Flux.error(new ReviewDataException("At most " + multiGetMaxIds + " movieInfoIds can be requested at once"));
+        }
+        return reviewReactiveRepository.findAllGroupedByMovieInfoIds(distinctIds, Sort.unsorted(), null);
+    }
+
+    // RSocket carries the subscriber's demand, so the buffer only absorbs bursts
+    @MessageMapping("reviews.stream")
+    public Flux<Object> getReviewsStream() {
+        return reviewStreamPublisher.subscribe(reviewStreamPublisher.getDefaultOverflowPolicy());
+    }
+
+    @MessageMapping("reviews.stream.{movieInfoId}")
+    public Flux<Object> getReviewsStreamByMovieInfoId(@DestinationVariable Long movieInfoId) {
+        return reviewStreamPublisher.subscribe(reviewStreamPublisher.getDefaultOverflowPolicy(), movieInfoId);
+    }
+}
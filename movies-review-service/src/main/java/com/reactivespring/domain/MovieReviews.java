@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The reviews of one movie, as returned by the multi-movie review lookup.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieReviews {
+
+    private Long movieInfoId;
+    private List<Review> reviews;
+}
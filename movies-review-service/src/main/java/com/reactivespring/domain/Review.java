@@ -5,15 +5,23 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// serve GET /v1/reviews?movieInfoId=&sort=&limit= by walking the index, in either direction
+@CompoundIndexes({
+        @CompoundIndex(name = "movieInfoId_rating", def = "{'movieInfoId': 1, 'rating': -1, '_id': -1}"),
+        @CompoundIndex(name = "movieInfoId_createdAt", def = "{'movieInfoId': 1, 'createdAt': -1, '_id': -1}")
+})
 public class Review {
 
     @Id
@@ -24,4 +32,18 @@ public class Review {
     private String comment;
     @Min(value = 0L, message = "review.negative must be a non-negative value")
     private Double rating;
+
+    // bumped on every update; send it back on PUT to have concurrent updates rejected
+    private Long version;
+
+    // set by the service when the review is added
+    private Instant createdAt;
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating) {
+        this(reviewId, movieInfoId, comment, rating, null);
+    }
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating, Long version) {
+        this(reviewId, movieInfoId, comment, rating, version, null);
+    }
 }
@@ -0,0 +1,50 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rating aggregate of one movie's reviews, kept current with $inc on every review
+ * write. Only reviews with a rating are counted.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewSummary {
+
+    @Id
+    private Long movieInfoId;
+    private long count;
+    private double sum;
+    private double sumOfSquares;
+    // number of ratings per whole point, keyed by the rating rounded down
+    private Map<String, Long> histogram = new HashMap<>();
+
+    public static ReviewSummary empty(Long movieInfoId) {
+        return new ReviewSummary(movieInfoId, 0, 0.0, 0.0, new HashMap<>());
+    }
+
+    public static String histogramBucket(double rating) {
+        return String.valueOf((long) Math.floor(rating));
+    }
+
+    public Double getAverage() {
+        return count == 0 ? null : sum / count;
+    }
+
+    public Double getStandardDeviation() {
+        if (count == 0) {
+            return null;
+        }
+        var average = sum / count;
+        // rounding can push the variance of equal ratings slightly below zero
+        return Math.sqrt(Math.max(0.0, sumOfSquares / count - average * average));
+    }
+}
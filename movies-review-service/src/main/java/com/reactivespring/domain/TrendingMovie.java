@@ -0,0 +1,20 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry of the trending leaderboard, over the requested window.
+ * ratingVelocity is the sum of the ratings received per minute of the window.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendingMovie {
+
+    private Long movieInfoId;
+    private long reviews;
+    private Double averageRating;
+    private double ratingVelocity;
+}
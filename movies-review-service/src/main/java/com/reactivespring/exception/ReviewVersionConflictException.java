@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class ReviewVersionConflictException extends RuntimeException {
+    private String message;
+    public ReviewVersionConflictException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class ReviewWriteOverloadedException extends RuntimeException {
+    private String message;
+    public ReviewWriteOverloadedException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
@@ -2,9 +2,12 @@ package com.reactivespring.exceptionhandler;
 
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
+import com.reactivespring.exception.ReviewVersionConflictException;
+import com.reactivespring.exception.ReviewWriteOverloadedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
 import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
@@ -31,6 +34,16 @@ public class GlobalErrorHandler implements ErrorWebExceptionHandler {
             return exchange.getResponse().writeWith(Mono.just(errorMessDataBuff));
         }
 
+        if (ex instanceof ReviewVersionConflictException || ex instanceof DuplicateKeyException) {
+            exchange.getResponse().setStatusCode(HttpStatus.CONFLICT);
+            return exchange.getResponse().writeWith(Mono.just(errorMessDataBuff));
+        }
+
+        if (ex instanceof ReviewWriteOverloadedException) {
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return exchange.getResponse().writeWith(Mono.just(errorMessDataBuff));
+        }
+
         exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
         return exchange.getResponse().writeWith(Mono.just(errorMessDataBuff));
     }
@@ -1,22 +1,44 @@
 package com.reactivespring.handler;
 
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.domain.TrendingMovie;
+import com.reactivespring.eventlog.EventLogTopics;
+import com.reactivespring.eventlog.JsonEventLog;
+import com.reactivespring.eventlog.LoggedEvent;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.repository.ReviewWriteCoalescer;
+import com.reactivespring.stream.OverflowPolicy;
+import com.reactivespring.stream.ReviewStreamPublisher;
+import com.reactivespring.stream.ReviewTrendTracker;
+import com.reactivespring.stream.TrendingOrder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Component
@@ -24,22 +46,44 @@ import java.util.stream.Collectors;
 public class ReviewHandler {
 
     private ReviewReactiveRepository reviewReactiveRepository;
-    private Sinks.Many<Review> reviewsSink = Sinks.many().replay().latest();
+    private ReviewStreamPublisher reviewStreamPublisher;
+    private ReviewWriteCoalescer reviewWriteCoalescer;
+    private ReviewSummaryRepository reviewSummaryRepository;
+    private ReviewTrendTracker reviewTrendTracker;
+    private JsonEventLog<Review> reviewEventLog;
+    private EventLogTopics<Long, Review> reviewEventLogTopics;
 
     @Autowired
     private Validator validator;
 
-    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository) {
+    @Value("${reviews.multi-get.max-ids:1000}")
+    private int multiGetMaxIds;
+
+    @Value("${reviews.list.max-limit:100}")
+    private int listMaxLimit;
+
+    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository,
+                         ReviewStreamPublisher reviewStreamPublisher,
+                         ReviewWriteCoalescer reviewWriteCoalescer,
+                         ReviewSummaryRepository reviewSummaryRepository,
+                         ReviewTrendTracker reviewTrendTracker,
+                         JsonEventLog<Review> reviewEventLog,
+                         EventLogTopics<Long, Review> reviewEventLogTopics) {
         this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewStreamPublisher = reviewStreamPublisher;
+        this.reviewWriteCoalescer = reviewWriteCoalescer;
+        this.reviewSummaryRepository = reviewSummaryRepository;
+        this.reviewTrendTracker = reviewTrendTracker;
+        this.reviewEventLog = reviewEventLog;
+        this.reviewEventLogTopics = reviewEventLogTopics;
     }
 
     public Mono<ServerResponse> addReview(ServerRequest request) {
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
-                .flatMap(reviewReactiveRepository::save)
-                .doOnNext(review -> {
-                    reviewsSink.tryEmitNext(review);
-                })
+                .flatMap(reviewWriteCoalescer::insert)
+                .doOnNext(reviewEventLog::appendLater)
+                .doOnNext(reviewStreamPublisher::publish)
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
     }
 
@@ -56,48 +100,271 @@ public class ReviewHandler {
         }
     }
 
+    /**
+     * Reviews of all movies, of one movie, or grouped per movie for movieInfoIds.
+     * For one movie, sort (rating or createdAt, highest first unless direction=asc)
+     * and limit are served by the compound indexes on Review, so only the requested
+     * reviews are read. For movieInfoIds, limit applies to each movie.
+     */
     public Mono<ServerResponse> getAllReviews(ServerRequest request) {
         var movieInfoId = request.queryParam("movieInfoId");
+        var movieInfoIds = request.queryParam("movieInfoIds");
+        var sort = toSort(request);
+        var limit = toLimit(request);
+
+        if (movieInfoIds.isPresent()) {
+            if (movieInfoId.isPresent()) {
+                throw new ReviewDataException("movieInfoId and movieInfoIds cannot be combined");
+            }
+            return groupedReviewsResponse(toMovieInfoIds(movieInfoIds.get()), sort, limit);
+        }
+
         Flux<Review> reviewsFlux;
         if (movieInfoId.isPresent()) {
-            reviewsFlux = reviewReactiveRepository
-                    .findAllByMovieInfoId(Long.valueOf(movieInfoId.get()));
+            var id = toMovieInfoId(movieInfoId.get());
+            if (limit.isPresent()) {
+                reviewsFlux = reviewReactiveRepository
+                        .findAllByMovieInfoId(id, PageRequest.of(0, limit.get(), sort.orElse(Sort.unsorted())));
+            } else if (sort.isPresent()) {
+                reviewsFlux = reviewReactiveRepository.findAllByMovieInfoId(id, sort.get());
+            } else {
+                reviewsFlux = reviewReactiveRepository.findAllByMovieInfoId(id);
+            }
+        } else if (sort.isPresent() || limit.isPresent()) {
+            throw new ReviewDataException("sort and limit require a movieInfoId");
         } else {
             reviewsFlux = reviewReactiveRepository.findAll();
         }
         return ServerResponse.ok().body(reviewsFlux, Review.class);
     }
 
+    /**
+     * The POST form of GET /v1/reviews?movieInfoIds=, for id lists too long for a
+     * query string. The body is a JSON array of movieInfoIds.
+     */
+    public Mono<ServerResponse> getReviewsForMovies(ServerRequest request) {
+        var sort = toSort(request);
+        var limit = toLimit(request);
+
+        return request.bodyToMono(new ParameterizedTypeReference<List<Long>>() {})
+                .switchIfEmpty(Mono.error(new ReviewDataException("A JSON array of movieInfoIds is required")))
+                .map(ids -> checkMovieInfoIdsCount(ids.stream().distinct().collect(Collectors.toList())))
+                .flatMap(ids -> groupedReviewsResponse(ids, sort, limit));
+    }
+
+    // movies without reviews are left out of the response
+    private Mono<ServerResponse> groupedReviewsResponse(List<Long> movieInfoIds, Optional<Sort> sort, Optional<Integer> limit) {
+        var movieReviews = reviewReactiveRepository
+                .findAllGroupedByMovieInfoIds(movieInfoIds, sort.orElse(Sort.unsorted()), limit.orElse(null));
+        return ServerResponse.ok().body(movieReviews, MovieReviews.class);
+    }
+
+    private Optional<Sort> toSort(ServerRequest request) {
+        return request.queryParam("sort")
+                .map(field -> toSort(field, request.queryParam("direction").orElse("desc")));
+    }
+
+    private Optional<Integer> toLimit(ServerRequest request) {
+        return request.queryParam("limit")
+                .map(this::toLimit);
+    }
+
+    // reviewId breaks ties, matching the trailing _id of the indexes
+    private Sort toSort(String field, String direction) {
+        if (!field.equals("rating") && !field.equals("createdAt")) {
+            throw new ReviewDataException("sort must be one of [rating, createdAt]");
+        }
+        Sort.Direction sortDirection;
+        try {
+            sortDirection = Sort.Direction.fromString(direction.trim());
+        } catch (IllegalArgumentException ex) {
+            throw new ReviewDataException("direction must be one of [asc, desc]");
+        }
+        return Sort.by(sortDirection, field).and(Sort.by(sortDirection, "reviewId"));
+    }
+
+    private int toLimit(String limit) {
+        try {
+            return Math.max(1, Math.min(Integer.parseInt(limit), listMaxLimit));
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("Invalid limit: " + limit);
+        }
+    }
+
+    // a movie without rated reviews has an empty summary rather than none
+    public Mono<ServerResponse> getReviewSummary(ServerRequest request) {
+        var movieInfoId = request.queryParam("movieInfoId")
+                .map(this::toMovieInfoId)
+                .orElseThrow(() -> new ReviewDataException("movieInfoId is required"));
+
+        return reviewSummaryRepository.findById(movieInfoId)
+                .defaultIfEmpty(ReviewSummary.empty(movieInfoId))
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    // one summary per requested id, in request order
+    public Mono<ServerResponse> getReviewSummaries(ServerRequest request) {
+        var movieInfoIds = request.queryParam("movieInfoIds")
+                .map(this::toMovieInfoIds)
+                .orElseThrow(() -> new ReviewDataException("movieInfoIds is required"));
+
+        var reviewSummaries = reviewSummaryRepository.findAllById(movieInfoIds)
+                .collectMap(ReviewSummary::getMovieInfoId)
+                .flatMapMany(found -> Flux.fromIterable(movieInfoIds)
+                        .map(movieInfoId -> found.getOrDefault(movieInfoId, ReviewSummary.empty(movieInfoId))));
+        return ServerResponse.ok().body(reviewSummaries, ReviewSummary.class);
+    }
+
+    public Mono<ServerResponse> repairReviewSummaries(ServerRequest request) {
+        return reviewSummaryRepository.recomputeAll()
+                .flatMap(repaired -> ServerResponse.ok().bodyValue(Map.of("repaired", repaired)));
+    }
+
+    private List<Long> toMovieInfoIds(String movieInfoIds) {
+        return checkMovieInfoIdsCount(Arrays.stream(movieInfoIds.split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .map(this::toMovieInfoId)
+                .distinct()
+                .collect(Collectors.toList()));
+    }
+
+    private List<Long> checkMovieInfoIdsCount(List<Long> movieInfoIds) {
+        if (movieInfoIds.size() > multiGetMaxIds) {
+            throw new ReviewDataException("At most " + multiGetMaxIds + " movieInfoIds can be requested at once");
+        }
+        return movieInfoIds;
+    }
+
+    private Mono<ServerResponse> getLoggedReviewsStream(ServerRequest request, String lastEventId) {
+        var movieInfoId = request.queryParam("movieInfoId")
+                .map(this::toMovieInfoId)
+                .orElse(null);
+        Flux<LoggedEvent<Review>> reviews;
+        if (lastEventId != null) {
+            var offset = toOffset(lastEventId);
+            reviews = movieInfoId == null
+                    ? reviewEventLog.tailAfter(offset)
+                    : reviewEventLogTopics.subscribeAfter(movieInfoId, offset);
+        } else {
+            // without an offset, start at the newest review, as the live stream does
+            var fromOffset = request.queryParam("fromOffset")
+                    .map(this::toOffset)
+                    .orElse(reviewEventLog.latestOffset());
+            // a movie's subscribers read the log only up to its end, then get the movie's reviews from its topic
+            reviews = movieInfoId == null
+                    ? reviewEventLog.tail(fromOffset)
+                    : reviewEventLogTopics.subscribe(movieInfoId, fromOffset);
+        }
+
+        if (request.headers().accept().contains(MediaType.TEXT_EVENT_STREAM)) {
+            // event ids are offsets, so clients resume with Last-Event-ID
+            var events = reviews.map(loggedEvent -> ServerSentEvent.builder(loggedEvent.getEvent())
+                    .id(String.valueOf(loggedEvent.getOffset()))
+                    .build());
+            return ServerResponse.ok()
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(events, new ParameterizedTypeReference<ServerSentEvent<Review>>() {});
+        }
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(reviews.map(LoggedEvent::getEvent), Review.class);
+    }
+
+    private long toOffset(String offset) {
+        try {
+            var parsed = Long.parseLong(offset.trim());
+            if (reviewEventLog.isValidOffset(parsed)) {
+                return parsed;
+            }
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new ReviewDataException("No stream event starts at offset " + offset);
+    }
+
+    // window (e.g. 15m, 1h), k and by (reviews or velocity) default to 15m, 20 and reviews
+    public Mono<ServerResponse> getTrending(ServerRequest request) {
+        var trending = reviewTrendTracker.trending(toWindow(request), toK(request), toTrendingOrder(request));
+        return ServerResponse.ok().bodyValue(trending);
+    }
+
+    public Mono<ServerResponse> getTrendingStream(ServerRequest request) {
+        var updates = reviewTrendTracker.trendingUpdates(toWindow(request), toK(request), toTrendingOrder(request));
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(updates, new ParameterizedTypeReference<List<TrendingMovie>>() {});
+    }
+
+    private Duration toWindow(ServerRequest request) {
+        var window = request.queryParam("window").orElse("15m");
+        try {
+            return DurationStyle.detectAndParse(window.trim());
+        } catch (IllegalArgumentException ex) {
+            throw new ReviewDataException("Invalid window: " + window);
+        }
+    }
+
+    private int toK(ServerRequest request) {
+        var k = request.queryParam("k").orElse("20");
+        try {
+            return Integer.parseInt(k.trim());
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("Invalid k: " + k);
+        }
+    }
+
+    private TrendingOrder toTrendingOrder(ServerRequest request) {
+        return request.queryParam("by")
+                .map(TrendingOrder::fromParam)
+                .orElse(TrendingOrder.REVIEWS);
+    }
+
+    private Long toMovieInfoId(String movieInfoId) {
+        try {
+            return Long.valueOf(movieInfoId);
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("Invalid movieInfoId: " + movieInfoId);
+        }
+    }
+
     public Mono<ServerResponse> updateReview(ServerRequest request) {
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactiveRepository
-                .findById(reviewId);
-//                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given Id " + reviewId)));
-
-        return existingReview
-                .flatMap(review -> request
-                        .bodyToMono(Review.class)
-                        .map(reqReview -> {
-                            review.setComment(reqReview.getComment());
-                            review.setRating(reqReview.getRating());
-                            return review;
-                        })
-                        .flatMap(reviewReactiveRepository::save)
-                        .flatMap(ServerResponse.ok()::bodyValue))
+
+        return request.bodyToMono(Review.class)
+                .flatMap(reqReview -> reviewReactiveRepository.updateReview(reviewId, reqReview))
+                .flatMap(ServerResponse.ok()::bodyValue)
                 .switchIfEmpty(ServerResponse.notFound().build());
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactiveRepository.findById(reviewId);
-        return existingReview
-                .flatMap(review -> reviewReactiveRepository.deleteById(reviewId))
-                .then(ServerResponse.noContent().build());
+        return reviewReactiveRepository.removeReview(reviewId)
+                .flatMap(review -> ServerResponse.noContent().build())
+                .switchIfEmpty(ServerResponse.notFound().build());
     }
 
+    /**
+     * Live reviews, of all movies or, with movieInfoId, of one. With fromOffset, or
+     * Last-Event-ID from a reconnecting server-sent events client, the stream starts
+     * with the history kept in the event log and reads it at the subscriber's pace.
+     */
     public Mono<ServerResponse> getReviewsStream(ServerRequest request) {
+        var lastEventId = request.headers().firstHeader("Last-Event-ID");
+        if (request.queryParam("fromOffset").isPresent() || lastEventId != null
+                || request.headers().accept().contains(MediaType.TEXT_EVENT_STREAM)) {
+            return getLoggedReviewsStream(request, lastEventId);
+        }
+
+        var overflowPolicy = request.queryParam("overflow")
+                .map(OverflowPolicy::fromParam)
+                .orElse(reviewStreamPublisher.getDefaultOverflowPolicy());
+        var movieInfoId = request.queryParam("movieInfoId")
+                .map(this::toMovieInfoId)
+                .orElse(null);
+
         return ServerResponse.ok()
                 .contentType(MediaType.APPLICATION_NDJSON)
-                .body(reviewsSink.asFlux(), Review.class);
+                .body(reviewStreamPublisher.subscribe(overflowPolicy, movieInfoId), Object.class);
     }
 }
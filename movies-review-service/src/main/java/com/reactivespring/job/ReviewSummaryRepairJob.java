@@ -0,0 +1,31 @@
+package com.reactivespring.job;
+
+import com.reactivespring.repository.ReviewSummaryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Rebuilds the ReviewSummary documents from the raw reviews on the
+ * reviews.summary.repair.cron schedule, which is off ("-") by default.
+ * POST /v1/reviews/summaries/repair runs the same repair on demand.
+ */
+@Component
+@Slf4j
+public class ReviewSummaryRepairJob {
+
+    private ReviewSummaryRepository reviewSummaryRepository;
+
+    public ReviewSummaryRepairJob(ReviewSummaryRepository reviewSummaryRepository) {
+        this.reviewSummaryRepository = reviewSummaryRepository;
+    }
+
+    @Scheduled(cron = "${reviews.summary.repair.cron:-}")
+    public void repair() {
+        var started = System.nanoTime();
+        var repaired = reviewSummaryRepository.recomputeAll().block();
+        log.info("Repaired {} review summaries in {}", repaired, Duration.ofNanos(System.nanoTime() - started));
+    }
+}
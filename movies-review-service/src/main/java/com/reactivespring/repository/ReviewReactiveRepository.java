@@ -1,10 +1,16 @@
 package com.reactivespring.repository;
 
 import com.reactivespring.domain.Review;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 
-public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String> {
+public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String>, ReviewReactiveRepositoryCustom {
 
     Flux<Review> findAllByMovieInfoId(Long movieInfoId);
+
+    Flux<Review> findAllByMovieInfoId(Long movieInfoId, Sort sort);
+
+    Flux<Review> findAllByMovieInfoId(Long movieInfoId, Pageable pageable);
 }
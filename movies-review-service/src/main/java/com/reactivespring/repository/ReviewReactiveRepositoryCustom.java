@@ -0,0 +1,18 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface ReviewReactiveRepositoryCustom {
+
+    Mono<Review> updateReview(String reviewId, Review review);
+
+    Mono<Review> removeReview(String reviewId);
+
+    Flux<MovieReviews> findAllGroupedByMovieInfoIds(Collection<Long> movieInfoIds, Sort sort, Integer limitPerMovie);
+}
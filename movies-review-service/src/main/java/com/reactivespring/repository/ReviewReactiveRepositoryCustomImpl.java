@@ -0,0 +1,138 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewVersionConflictException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.TreeSet;
+
+public class ReviewReactiveRepositoryCustomImpl implements ReviewReactiveRepositoryCustom {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private ReviewSummaryRepository reviewSummaryRepository;
+    private int multiGetConcurrency;
+
+    public ReviewReactiveRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate,
+                                              ReviewSummaryRepository reviewSummaryRepository,
+                                              @Value("${reviews.multi-get.concurrency:4}") int multiGetConcurrency) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewSummaryRepository = reviewSummaryRepository;
+        this.multiGetConcurrency = multiGetConcurrency;
+    }
+
+    /**
+     * Single findAndModify that only $sets the fields present in the request.
+     * When the request carries a version, the update only applies if it still
+     * matches the stored one, otherwise a ReviewVersionConflictException is raised.
+     * The previous document is returned by Mongo, so the movie's ReviewSummary can
+     * be moved from the old rating to the new one.
+     */
+    @Override
+    public Mono<Review> updateReview(String reviewId, Review review) {
+        var query = Query.query(Criteria.where("reviewId").is(reviewId));
+        if (review.getVersion() != null) {
+            query.addCriteria(versionCriteria(review.getVersion()));
+        }
+
+        var update = new Update().inc("version", 1);
+        if (review.getComment() != null) {
+            update.set("comment", review.getComment());
+        }
+        if (review.getRating() != null) {
+            update.set("rating", review.getRating());
+        }
+
+        return reactiveMongoTemplate
+                .findAndModify(query, update, FindAndModifyOptions.options().returnNew(false), Review.class)
+                .flatMap(previous -> {
+                    var updated = applyUpdate(previous, review);
+                    return reviewSummaryRepository
+                            .applyRatingChange(previous.getMovieInfoId(),
+                                    Collections.singletonList(previous.getRating()),
+                                    Collections.singletonList(updated.getRating()))
+                            .thenReturn(updated);
+                })
+                .switchIfEmpty(Mono.defer(() -> versionConflictOrEmpty(reviewId, review.getVersion())));
+    }
+
+    @Override
+    public Mono<Review> removeReview(String reviewId) {
+        return reactiveMongoTemplate
+                .findAndRemove(Query.query(Criteria.where("reviewId").is(reviewId)), Review.class)
+                .flatMap(removed -> reviewSummaryRepository
+                        .applyRatingChange(removed.getMovieInfoId(),
+                                Collections.singletonList(removed.getRating()), Collections.emptyList())
+                        .thenReturn(removed));
+    }
+
+    /**
+     * Reviews of several movies, one group per movie with reviews, in ascending
+     * movieInfoId order. Without a per movie limit this is a single $in query sorted
+     * by movieInfoId first, so each movie's reviews arrive together. A per movie limit
+     * cannot be expressed in one $in query, so each movie then walks its own range of
+     * the compound indexes, a few movies at a time.
+     */
+    @Override
+    public Flux<MovieReviews> findAllGroupedByMovieInfoIds(Collection<Long> movieInfoIds, Sort sort, Integer limitPerMovie) {
+        var sortedIds = new TreeSet<>(movieInfoIds);
+        if (limitPerMovie != null) {
+            return Flux.fromIterable(sortedIds)
+                    .flatMapSequential(movieInfoId -> reactiveMongoTemplate
+                            .find(Query.query(Criteria.where("movieInfoId").is(movieInfoId)).with(sort).limit(limitPerMovie),
+                                    Review.class)
+                            .collectList()
+                            .filter(reviews -> !reviews.isEmpty())
+                            .map(reviews -> new MovieReviews(movieInfoId, reviews)), multiGetConcurrency);
+        }
+
+        var query = Query.query(Criteria.where("movieInfoId").in(sortedIds))
+                .with(Sort.by("movieInfoId").and(sort));
+        return reactiveMongoTemplate.find(query, Review.class)
+                .bufferUntilChanged(Review::getMovieInfoId)
+                .map(reviews -> new MovieReviews(reviews.get(0).getMovieInfoId(), reviews));
+    }
+
+    // the document as the update left it, so it does not have to be read back
+    private Review applyUpdate(Review previous, Review review) {
+        var version = previous.getVersion() == null ? 0L : previous.getVersion();
+        return new Review(previous.getReviewId(),
+                previous.getMovieInfoId(),
+                review.getComment() != null ? review.getComment() : previous.getComment(),
+                review.getRating() != null ? review.getRating() : previous.getRating(),
+                version + 1,
+                previous.getCreatedAt());
+    }
+
+    // documents written before versioning have no version field, they count as version 0
+    private Criteria versionCriteria(Long version) {
+        if (version == 0L) {
+            return Criteria.where("version").in(Arrays.asList(0L, null));
+        }
+        return Criteria.where("version").is(version);
+    }
+
+    // only a failed versioned update needs the extra lookup to tell a conflict from a missing document
+    private Mono<Review> versionConflictOrEmpty(String reviewId, Long version) {
+        if (version == null) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate
+                .exists(Query.query(Criteria.where("reviewId").is(reviewId)), Review.class)
+                .flatMap(exists -> exists
+                        ? Mono.error(new ReviewVersionConflictException(
+                                "Review " + reviewId + " was modified concurrently, expected version " + version))
+                        : Mono.empty());
+    }
+}
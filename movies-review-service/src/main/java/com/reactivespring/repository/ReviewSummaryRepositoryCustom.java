@@ -0,0 +1,12 @@
+package com.reactivespring.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface ReviewSummaryRepositoryCustom {
+
+    Mono<Void> applyRatingChange(Long movieInfoId, Collection<Double> removedRatings, Collection<Double> addedRatings);
+
+    Mono<Long> recomputeAll();
+}
@@ -0,0 +1,133 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+@Slf4j
+public class ReviewSummaryRepositoryCustomImpl implements ReviewSummaryRepositoryCustom {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewSummaryRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * Applies the ratings that were removed from and added to the movie as a single
+     * upsert with $inc, so concurrent writers never overwrite each other. Null
+     * ratings are not part of the summary and are skipped. The review write this
+     * follows has already happened, so a failure is only logged and left for
+     * recomputeAll to repair.
+     */
+    @Override
+    public Mono<Void> applyRatingChange(Long movieInfoId, Collection<Double> removedRatings, Collection<Double> addedRatings) {
+        var countDelta = 0L;
+        var sumDelta = 0.0;
+        var sumOfSquaresDelta = 0.0;
+        var histogramDeltas = new HashMap<String, Long>();
+
+        for (var rating : removedRatings) {
+            if (rating != null) {
+                countDelta--;
+                sumDelta -= rating;
+                sumOfSquaresDelta -= rating * rating;
+                histogramDeltas.merge(ReviewSummary.histogramBucket(rating), -1L, Long::sum);
+            }
+        }
+        for (var rating : addedRatings) {
+            if (rating != null) {
+                countDelta++;
+                sumDelta += rating;
+                sumOfSquaresDelta += rating * rating;
+                histogramDeltas.merge(ReviewSummary.histogramBucket(rating), 1L, Long::sum);
+            }
+        }
+        histogramDeltas.values().removeIf(delta -> delta == 0L);
+        if (countDelta == 0L && histogramDeltas.isEmpty()) {
+            // a rating that did not change, or no ratings at all
+            return Mono.empty();
+        }
+
+        var update = new Update()
+                .inc("count", countDelta)
+                .inc("sum", sumDelta)
+                .inc("sumOfSquares", sumOfSquaresDelta);
+        histogramDeltas.forEach((bucket, delta) -> update.inc("histogram." + bucket, delta));
+
+        return reactiveMongoTemplate
+                .upsert(Query.query(Criteria.where("movieInfoId").is(movieInfoId)), update, ReviewSummary.class)
+                .doOnError(ex -> log.warn("Review summary of movie {} was not updated : {}", movieInfoId, ex.getMessage()))
+                .onErrorResume(ex -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * Rebuilds every summary from the raw reviews, replacing the stored ones, and
+     * removes the summaries of movies that no longer have rated reviews. Writes that
+     * land while a movie is being rebuilt can be lost, so this is meant for repairing
+     * drift, not for running continuously. Returns the number of summaries written.
+     */
+    @Override
+    public Mono<Long> recomputeAll() {
+        var aggregation = newAggregation(Review.class,
+                match(Criteria.where("rating").ne(null).and("movieInfoId").ne(null)),
+                project("movieInfoId", "rating")
+                        .and(ArithmeticOperators.Floor.floorValueOf("rating")).as("bucket")
+                        .and(ArithmeticOperators.valueOf("rating").multiplyBy("rating")).as("ratingSquared"),
+                group("movieInfoId", "bucket")
+                        .count().as("count")
+                        .sum("rating").as("sum")
+                        .sum("ratingSquared").as("sumOfSquares"),
+                sort(Sort.Direction.ASC, "movieInfoId"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        var recomputedIds = new HashSet<Long>();
+        return reactiveMongoTemplate.aggregate(aggregation, Document.class)
+                // rows arrive sorted by movie, one per histogram bucket
+                .bufferUntilChanged(this::movieInfoId)
+                .map(this::toReviewSummary)
+                .doOnNext(reviewSummary -> recomputedIds.add(reviewSummary.getMovieInfoId()))
+                .concatMap(reviewSummary -> reactiveMongoTemplate.save(reviewSummary))
+                .count()
+                .flatMap(written -> reactiveMongoTemplate.findAll(ReviewSummary.class)
+                        .map(ReviewSummary::getMovieInfoId)
+                        .filter(movieInfoId -> !recomputedIds.contains(movieInfoId))
+                        .concatMap(movieInfoId -> reactiveMongoTemplate.remove(
+                                Query.query(Criteria.where("movieInfoId").is(movieInfoId)), ReviewSummary.class))
+                        .then(Mono.just(written)));
+    }
+
+    private ReviewSummary toReviewSummary(List<Document> rows) {
+        var reviewSummary = ReviewSummary.empty(movieInfoId(rows.get(0)));
+        for (var row : rows) {
+            var count = ((Number) row.get("count")).longValue();
+            reviewSummary.setCount(reviewSummary.getCount() + count);
+            reviewSummary.setSum(reviewSummary.getSum() + ((Number) row.get("sum")).doubleValue());
+            reviewSummary.setSumOfSquares(reviewSummary.getSumOfSquares() + ((Number) row.get("sumOfSquares")).doubleValue());
+            var bucket = ((Number) row.get("_id", Document.class).get("bucket")).doubleValue();
+            reviewSummary.getHistogram().put(ReviewSummary.histogramBucket(bucket), count);
+        }
+        return reviewSummary;
+    }
+
+    private Long movieInfoId(Document row) {
+        return ((Number) row.get("_id", Document.class).get("movieInfoId")).longValue();
+    }
+}
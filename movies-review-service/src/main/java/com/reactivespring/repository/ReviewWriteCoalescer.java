@@ -0,0 +1,284 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewWriteOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces concurrent review inserts into unordered insertMany calls.
+ * A batch is written once it holds reviews.write-batch.max-size reviews or its first
+ * review has waited reviews.write-batch.max-wait, and every caller's Mono completes
+ * with its own saved review or the error of its own document. When disabled, and for
+ * reviews that already carry an id, each review is inserted on its own. Either way
+ * a review is only ever inserted, never saved over an existing one: a reused id fails
+ * with a DuplicateKeyException and leaves the stored review and its movie's
+ * ReviewSummary alone. The ReviewSummary is updated once the review is stored, with
+ * one $inc per movie and batch. Both paths write with reviews.write-batch.write-concern.
+ * At most reviews.write-batch.max-pending reviews wait for or are in a batch; beyond
+ * that inserts fail right away with a ReviewWriteOverloadedException (503) instead of
+ * piling up on the heap while MongoDB is slow. On shutdown the waiting reviews are
+ * still written, for at most reviews.write-batch.shutdown-timeout.
+ */
+@Component
+@Slf4j
+public class ReviewWriteCoalescer {
+
+    // how long an insert retries while another one is emitting, far longer than one emit takes
+    private static final Duration EMIT_RETRY = Duration.ofMillis(100);
+
+    private Sinks.Many<PendingInsert> pendingInserts;
+    // reviews accepted but not yet written or failed
+    private AtomicInteger pending = new AtomicInteger();
+    private CountDownLatch drained = new CountDownLatch(1);
+    private Disposable batches;
+    private MongoExceptionTranslator exceptionTranslator = new MongoExceptionTranslator();
+
+    private ReviewSummaryRepository reviewSummaryRepository;
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private boolean enabled;
+    private int maxPending;
+    private Duration shutdownTimeout;
+    private WriteConcern writeConcern;
+
+    private DistributionSummary batchSize;
+    private Timer batchWait;
+    private Timer batchWrite;
+    private Counter inserted;
+    private Counter rejected;
+
+    public ReviewWriteCoalescer(ReviewSummaryRepository reviewSummaryRepository,
+                                ReactiveMongoTemplate reactiveMongoTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${reviews.write-batch.enabled:false}") boolean enabled,
+                                @Value("${reviews.write-batch.max-size:100}") int maxSize,
+                                @Value("${reviews.write-batch.max-wait:5ms}") Duration maxWait,
+                                @Value("${reviews.write-batch.concurrency:4}") int concurrency,
+                                @Value("${reviews.write-batch.max-pending:10000}") int maxPending,
+                                @Value("${reviews.write-batch.shutdown-timeout:10s}") Duration shutdownTimeout,
+                                @Value("${reviews.write-batch.write-concern:acknowledged}") String writeConcern) {
+        this.reviewSummaryRepository = reviewSummaryRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.shutdownTimeout = shutdownTimeout;
+        this.writeConcern = toWriteConcern(writeConcern);
+        // the admission check in insert keeps it from ever filling up
+        this.pendingInserts = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(maxPending));
+
+        this.batchSize = DistributionSummary.builder("reviews.write.batch.size")
+                .description("Reviews written per insertMany")
+                .register(meterRegistry);
+        this.batchWait = Timer.builder("reviews.write.batch.wait")
+                .description("Time a review waited for its batch to be written")
+                .register(meterRegistry);
+        this.batchWrite = Timer.builder("reviews.write.batch.duration")
+                .description("Duration of one insertMany")
+                .register(meterRegistry);
+        this.inserted = Counter.builder("reviews.write.batch.inserted")
+                .description("Reviews inserted through batches")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("reviews.write.batch.rejected")
+                .description("Reviews rejected because max-pending reviews were waiting for their batch")
+                .register(meterRegistry);
+
+        if (enabled) {
+            batches = pendingInserts.asFlux()
+                    .bufferTimeout(maxSize, maxWait)
+                    // bufferTimeout emits on its timer regardless of demand, so batches queue up here
+                    // instead, bounded by max-pending as every batch holds at least one pending review
+                    .onBackpressureBuffer()
+                    .flatMap(this::insertBatch, concurrency)
+                    .doFinally(signalType -> drained.countDown())
+                    .subscribe();
+        } else {
+            drained.countDown();
+        }
+    }
+
+    public Mono<Review> insert(Review review) {
+        // every path below is a plain insert, so an existing review's createdAt is never replaced
+        review.setCreatedAt(Instant.now());
+        if (!enabled || review.getReviewId() != null) {
+            return insertOne(review)
+                    .flatMap(saved -> reviewSummaryRepository
+                            .applyRatingChange(saved.getMovieInfoId(), Collections.emptyList(), Collections.singletonList(saved.getRating()))
+                            .thenReturn(saved));
+        }
+        return Mono.create(sink -> {
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                rejected.increment();
+                sink.error(new ReviewWriteOverloadedException("Too many reviews are waiting to be written, try again later"));
+                return;
+            }
+            try {
+                // concurrent inserts race on the sink, retried for a bounded time instead of spinning on the event loop
+                pendingInserts.emitNext(new PendingInsert(review, sink, System.nanoTime()),
+                        Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY));
+            } catch (Sinks.EmissionException ex) {
+                // stopped, the queue is full despite the admission check, or still contended after EMIT_RETRY
+                pending.decrementAndGet();
+                rejected.increment();
+                sink.error(new ReviewWriteOverloadedException("Reviews are not accepted for writing : " + ex.getReason()));
+            }
+        });
+    }
+
+    // writes the inserts still waiting for their batch, then returns
+    @PreDestroy
+    public void stop() {
+        pendingInserts.tryEmitComplete();
+        try {
+            if (drained.await(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("{} reviews were still being written after {}, giving up on them", pending.get(), shutdownTimeout);
+        batches.dispose();
+    }
+
+    // written like a batch of one, the repository's insert would use the template's write concern
+    private Mono<Review> insertOne(Review review) {
+        if (review.getReviewId() == null) {
+            review.setReviewId(new ObjectId().toHexString());
+        }
+        var document = new Document();
+        reactiveMongoTemplate.getConverter().write(review, document);
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.withWriteConcern(writeConcern).insertOne(document)))
+                .onErrorMap(RuntimeException.class, this::translate)
+                .thenReturn(review);
+    }
+
+    private Mono<Void> insertBatch(List<PendingInsert> batch) {
+        var started = System.nanoTime();
+        batchSize.record(batch.size());
+        batch.forEach(pendingInsert -> batchWait.record(started - pendingInsert.enqueuedAt, TimeUnit.NANOSECONDS));
+
+        var documents = new ArrayList<Document>(batch.size());
+        for (var pendingInsert : batch) {
+            // ids are assigned up front so every caller gets its own document back
+            pendingInsert.review.setReviewId(new ObjectId().toHexString());
+            var document = new Document();
+            reactiveMongoTemplate.getConverter().write(pendingInsert.review, document);
+            documents.add(document);
+        }
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.withWriteConcern(writeConcern)
+                        .insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Map.<Integer, Throwable>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> ex.getWriteConcernError() != null
+                        // the documents may or may not be stored, so the whole batch fails
+                        ? Mono.error(ex)
+                        : Mono.just(toFailures(ex)))
+                .flatMap(failures -> updateSummaries(batch, failures)
+                        .then(Mono.fromRunnable(() -> complete(batch, failures))))
+                .onErrorResume(ex -> {
+                    log.warn("Batch of {} reviews failed : {}", batch.size(), ex.getMessage());
+                    batch.forEach(pendingInsert -> pendingInsert.sink.error(ex));
+                    return Mono.empty();
+                })
+                .doFinally(signalType -> {
+                    batchWrite.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    pending.addAndGet(-batch.size());
+                })
+                .then();
+    }
+
+    // the batch is unordered, so only the documents listed in the write errors were not inserted
+    private Map<Integer, Throwable> toFailures(MongoBulkWriteException ex) {
+        var failures = new HashMap<Integer, Throwable>();
+        for (var writeError : ex.getWriteErrors()) {
+            failures.put(writeError.getIndex(), translate(new MongoWriteException(writeError, ex.getServerAddress())));
+        }
+        return failures;
+    }
+
+    private Mono<Void> updateSummaries(List<PendingInsert> batch, Map<Integer, Throwable> failures) {
+        var addedRatings = new HashMap<Long, List<Double>>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (!failures.containsKey(i)) {
+                var review = batch.get(i).review;
+                addedRatings.computeIfAbsent(review.getMovieInfoId(), movieInfoId -> new ArrayList<>()).add(review.getRating());
+            }
+        }
+        return Flux.fromIterable(addedRatings.entrySet())
+                .flatMap(entry -> reviewSummaryRepository.applyRatingChange(entry.getKey(), Collections.emptyList(), entry.getValue()))
+                .then();
+    }
+
+    private void complete(List<PendingInsert> batch, Map<Integer, Throwable> failures) {
+        inserted.increment(batch.size() - failures.size());
+        for (int i = 0; i < batch.size(); i++) {
+            var pendingInsert = batch.get(i);
+            var failure = failures.get(i);
+            if (failure == null) {
+                pendingInsert.sink.success(pendingInsert.review);
+            } else {
+                pendingInsert.sink.error(failure);
+            }
+        }
+    }
+
+    // a reused id fails with Spring's DuplicateKeyException, as from the repository
+    private Throwable translate(RuntimeException ex) {
+        var translated = exceptionTranslator.translateExceptionIfPossible(ex);
+        return translated == null ? ex : translated;
+    }
+
+    private static WriteConcern toWriteConcern(String name) {
+        var writeConcern = WriteConcern.valueOf(name.trim());
+        if (writeConcern == null) {
+            throw new IllegalArgumentException("Unknown reviews.write-batch.write-concern: " + name);
+        }
+        return writeConcern;
+    }
+
+    private static class PendingInsert {
+        private final Review review;
+        private final MonoSink<Review> sink;
+        private final long enqueuedAt;
+
+        private PendingInsert(Review review, MonoSink<Review> sink, long enqueuedAt) {
+            this.review = review;
+            this.sink = sink;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -22,10 +22,22 @@ public class ReviewRouter {
                                     request -> reviewHandler.addReview(request))
                             .GET("",
                                     request -> reviewHandler.getAllReviews(request))
+                            .POST("/movies",
+                                    request -> reviewHandler.getReviewsForMovies(request))
                             .PUT("/{id}",
                                     request -> reviewHandler.updateReview(request))
                             .GET("/stream",
                                     request -> reviewHandler.getReviewsStream(request))
+                            .GET("/trending",
+                                    request -> reviewHandler.getTrending(request))
+                            .GET("/trending/stream",
+                                    request -> reviewHandler.getTrendingStream(request))
+                            .GET("/summary",
+                                    request -> reviewHandler.getReviewSummary(request))
+                            .GET("/summaries",
+                                    request -> reviewHandler.getReviewSummaries(request))
+                            .POST("/summaries/repair",
+                                    request -> reviewHandler.repairReviewSummaries(request))
                             .DELETE("/{id}",
                                     request -> reviewHandler.deleteReview(request));
                 })
@@ -0,0 +1,127 @@
+package com.reactivespring.stream;
+
+import java.util.Arrays;
+
+/**
+ * Review counts and rating sums per movieInfoId, kept in open addressed primitive
+ * arrays so that recording a review neither boxes the key nor allocates an entry.
+ * The table grows by doubling up to maxSize movies and refuses new movies beyond
+ * that, which bounds its memory whatever the review rate. Not thread safe.
+ */
+class MovieStatsMap {
+
+    // no movie has this id, so it marks a free slot
+    static final long FREE = Long.MIN_VALUE;
+
+    private final int maxSize;
+    private long[] movieInfoIds;
+    private int[] counts;
+    private int[] ratedCounts;
+    private double[] ratingSums;
+    private int size;
+
+    MovieStatsMap(int maxSize) {
+        this.maxSize = maxSize;
+        allocate(16);
+    }
+
+    /**
+     * Adds to the movie's totals. Returns false when the movie is not in the map
+     * and the map already holds maxSize movies.
+     */
+    boolean add(long movieInfoId, int count, int ratedCount, double ratingSum) {
+        var slot = slot(movieInfoId);
+        if (movieInfoIds[slot] == FREE) {
+            if (movieInfoId == FREE || size == maxSize) {
+                return false;
+            }
+            // keep the table at most half full so probe sequences stay short
+            if ((size + 1) * 2 > movieInfoIds.length) {
+                grow();
+                slot = slot(movieInfoId);
+            }
+            movieInfoIds[slot] = movieInfoId;
+            size++;
+        }
+        counts[slot] += count;
+        ratedCounts[slot] += ratedCount;
+        ratingSums[slot] += ratingSum;
+        return true;
+    }
+
+    // movies beyond maxSize are left out, size the map for the union to merge them all
+    void addAll(MovieStatsMap other) {
+        other.forEach(this::add);
+    }
+
+    MovieStatsMap copy() {
+        var copy = new MovieStatsMap(maxSize);
+        copy.movieInfoIds = movieInfoIds.clone();
+        copy.counts = counts.clone();
+        copy.ratedCounts = ratedCounts.clone();
+        copy.ratingSums = ratingSums.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    void forEach(MovieStatsVisitor visitor) {
+        for (int i = 0; i < movieInfoIds.length; i++) {
+            if (movieInfoIds[i] != FREE) {
+                visitor.visit(movieInfoIds[i], counts[i], ratedCounts[i], ratingSums[i]);
+            }
+        }
+    }
+
+    // keeps the arrays, a bucket that was busy once is likely to be busy again
+    void clear() {
+        Arrays.fill(movieInfoIds, FREE);
+        Arrays.fill(counts, 0);
+        Arrays.fill(ratedCounts, 0);
+        Arrays.fill(ratingSums, 0.0);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(long movieInfoId) {
+        var mask = movieInfoIds.length - 1;
+        var hash = movieInfoId * 0x9E3779B97F4A7C15L;
+        var slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (movieInfoIds[slot] != FREE && movieInfoIds[slot] != movieInfoId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        var oldMovieInfoIds = movieInfoIds;
+        var oldCounts = counts;
+        var oldRatedCounts = ratedCounts;
+        var oldRatingSums = ratingSums;
+        allocate(oldMovieInfoIds.length * 2);
+        for (int i = 0; i < oldMovieInfoIds.length; i++) {
+            if (oldMovieInfoIds[i] != FREE) {
+                var slot = slot(oldMovieInfoIds[i]);
+                movieInfoIds[slot] = oldMovieInfoIds[i];
+                counts[slot] = oldCounts[i];
+                ratedCounts[slot] = oldRatedCounts[i];
+                ratingSums[slot] = oldRatingSums[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        movieInfoIds = new long[capacity];
+        Arrays.fill(movieInfoIds, FREE);
+        counts = new int[capacity];
+        ratedCounts = new int[capacity];
+        ratingSums = new double[capacity];
+    }
+
+    @FunctionalInterface
+    interface MovieStatsVisitor {
+        void visit(long movieInfoId, int count, int ratedCount, double ratingSum);
+    }
+}
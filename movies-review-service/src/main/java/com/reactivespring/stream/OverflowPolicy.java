@@ -0,0 +1,24 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.exception.ReviewDataException;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What happens when a stream subscriber falls behind by more than its buffer size.
+ */
+public enum OverflowPolicy {
+
+    DROP_OLDEST,
+    DROP_NEWEST,
+    DISCONNECT;
+
+    public static OverflowPolicy fromParam(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException ex) {
+            throw new ReviewDataException("overflow must be one of " + Arrays.toString(values()));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans saved reviews out to the /v1/reviews/stream subscribers.
+ * Each subscriber reads through its own bounded buffer, so the sink never waits
+ * for a slow consumer: once a buffer is full the subscriber's overflow policy
+ * decides whether events are dropped or the subscriber is disconnected.
+ * Subscribers of a single movie join that movie's topic, which exists only while
+ * it has subscribers, so a review costs one map lookup however many movies are
+ * being watched.
+ */
+@Component
+@Slf4j
+public class ReviewStreamPublisher {
+
+    private Sinks.Many<Review> reviewsSink = Sinks.many().replay().latest();
+    private Map<Long, Topic> movieTopics = new ConcurrentHashMap<>();
+    private Map<Object, AtomicInteger> subscriberLags = new ConcurrentHashMap<>();
+
+    private int bufferSize;
+    private OverflowPolicy defaultOverflowPolicy;
+    private MeterRegistry meterRegistry;
+    private Counter emitFailures;
+    private Counter disconnects;
+
+    public ReviewStreamPublisher(@Value("${reviews.stream.buffer-size:256}") int bufferSize,
+                                 @Value("${reviews.stream.overflow-policy:drop-oldest}") String defaultOverflowPolicy,
+                                 MeterRegistry meterRegistry) {
+        this.bufferSize = bufferSize;
+        this.defaultOverflowPolicy = OverflowPolicy.fromParam(defaultOverflowPolicy);
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("reviews.stream.subscribers", subscriberLags, Map::size)
+                .description("Active review stream subscribers")
+                .register(meterRegistry);
+        Gauge.builder("reviews.stream.topics", movieTopics, Map::size)
+                .description("Movies with active review stream subscribers")
+                .register(meterRegistry);
+        Gauge.builder("reviews.stream.subscriber.lag.max", subscriberLags, ReviewStreamPublisher::maxLag)
+                .description("Events buffered for the furthest behind subscriber")
+                .register(meterRegistry);
+        this.emitFailures = Counter.builder("reviews.stream.emit.failures")
+                .description("Reviews that could not be published to the stream")
+                .register(meterRegistry);
+        this.disconnects = Counter.builder("reviews.stream.disconnects")
+                .description("Subscribers disconnected for overflowing their buffer")
+                .register(meterRegistry);
+    }
+
+    public void publish(Review review) {
+        emit(reviewsSink, review);
+        var topic = review.getMovieInfoId() == null ? null : movieTopics.get(review.getMovieInfoId());
+        if (topic != null) {
+            emit(topic.sink, review);
+        }
+    }
+
+    private void emit(Sinks.Many<Review> sink, Review review) {
+        try {
+            // concurrent addReview calls race on the sink, retry those instead of losing the event
+            sink.emitNext(review, (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+        } catch (Sinks.EmissionException ex) {
+            if (ex.getReason() == Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+                // the topic's last subscriber left after the lookup
+                return;
+            }
+            emitFailures.increment();
+            log.warn("Review {} was not published to the stream: {}", review.getReviewId(), ex.getReason());
+        }
+    }
+
+    // every published review, unbuffered, for in-process consumers that keep up with publish
+    public Flux<Review> reviews() {
+        return reviewsSink.asFlux();
+    }
+
+    public OverflowPolicy getDefaultOverflowPolicy() {
+        return defaultOverflowPolicy;
+    }
+
+    public Flux<Object> subscribe(OverflowPolicy overflowPolicy) {
+        return subscribe(overflowPolicy, null);
+    }
+
+    /**
+     * Returns the stream for one subscriber, of all reviews or, with a movieInfoId,
+     * of that movie's reviews only. Elements are reviews, followed by a
+     * StreamErrorEvent if the subscriber gets disconnected.
+     */
+    public Flux<Object> subscribe(OverflowPolicy overflowPolicy, Long movieInfoId) {
+        return Flux.defer(() -> {
+            var subscriberKey = new Object();
+            var lag = new AtomicInteger();
+
+            var reviews = (movieInfoId == null ? reviewsSink.asFlux() : joinTopic(movieInfoId))
+                    .doOnNext(review -> lag.incrementAndGet());
+
+            return withOverflowPolicy(reviews, overflowPolicy, lag)
+                    .doOnNext(review -> lag.decrementAndGet())
+                    .cast(Object.class)
+                    .onErrorResume(Exceptions::isOverflow, ex -> {
+                        disconnects.increment();
+                        return Mono.just(new StreamErrorEvent(
+                                "Subscriber fell more than " + bufferSize + " events behind and was disconnected"));
+                    })
+                    .doOnSubscribe(subscription -> subscriberLags.put(subscriberKey, lag))
+                    .doFinally(signalType -> subscriberLags.remove(subscriberKey));
+        });
+    }
+
+    private Flux<Review> joinTopic(Long movieInfoId) {
+        var topic = movieTopics.compute(movieInfoId, (key, existing) -> {
+            var joined = existing == null ? new Topic() : existing;
+            joined.subscribers++;
+            return joined;
+        });
+        return topic.sink.asFlux()
+                .doFinally(signalType -> movieTopics.computeIfPresent(movieInfoId, (key, existing) ->
+                        --existing.subscribers == 0 ? null : existing));
+    }
+
+    private Flux<Review> withOverflowPolicy(Flux<Review> reviews, OverflowPolicy overflowPolicy, AtomicInteger lag) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                return reviews.onBackpressureBuffer(bufferSize,
+                        dropped -> onDropped(overflowPolicy, lag), BufferOverflowStrategy.DROP_OLDEST);
+            case DROP_NEWEST:
+                return reviews.onBackpressureBuffer(bufferSize,
+                        dropped -> onDropped(overflowPolicy, lag), BufferOverflowStrategy.DROP_LATEST);
+            default:
+                return reviews.onBackpressureBuffer(bufferSize);
+        }
+    }
+
+    private void onDropped(OverflowPolicy overflowPolicy, AtomicInteger lag) {
+        lag.decrementAndGet();
+        meterRegistry.counter("reviews.stream.dropped", "policy", overflowPolicy.name().toLowerCase()).increment();
+    }
+
+    private static double maxLag(Map<Object, AtomicInteger> subscriberLags) {
+        return subscriberLags.values().stream()
+                .mapToInt(AtomicInteger::get)
+                .max()
+                .orElse(0);
+    }
+
+    // subscribers is only read and written inside the map's compute functions
+    private static class Topic {
+        private final Sinks.Many<Review> sink = Sinks.many().multicast().directBestEffort();
+        private int subscribers;
+    }
+}
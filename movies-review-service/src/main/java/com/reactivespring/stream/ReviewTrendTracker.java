@@ -0,0 +1,209 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.TrendingMovie;
+import com.reactivespring.exception.ReviewDataException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Trending movies over a sliding window, computed from the reviews published to
+ * the review stream rather than from Mongo. Reviews are counted into a ring of
+ * time buckets covering reviews.trending.max-window, each a MovieStatsMap of at
+ * most reviews.trending.max-movies movies, so memory is bounded whatever the
+ * review rate. A query copies the buckets of its window, merges the copies into
+ * one map that holds every movie they count and keeps the top k in a heap of size
+ * k, so its cost is bounded by the window and max-movies too. A bucket stops
+ * changing once its time slice is over, so it is copied once and that snapshot
+ * is shared by every later query; only the copy of the current bucket holds up
+ * the recording of new reviews.
+ * Stream subscribers of the same leaderboard share one computation of it per
+ * reviews.trending.stream-interval.
+ */
+@Component
+public class ReviewTrendTracker {
+
+    private long bucketMillis;
+    private Duration maxWindow;
+    private int maxMovies;
+    private int maxK;
+    private Duration streamInterval;
+    private LongSupplier clock;
+    private Bucket[] buckets;
+    private Counter untracked;
+    // keyed by window buckets, size and order, so there are at most buckets * max-k * 2 of them
+    private Map<List<Object>, Flux<List<TrendingMovie>>> leaderboards = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ReviewTrendTracker(ReviewStreamPublisher reviewStreamPublisher,
+                              MeterRegistry meterRegistry,
+                              @Value("${reviews.trending.bucket:1m}") Duration bucket,
+                              @Value("${reviews.trending.max-window:1h}") Duration maxWindow,
+                              @Value("${reviews.trending.max-movies:10000}") int maxMovies,
+                              @Value("${reviews.trending.max-k:100}") int maxK,
+                              @Value("${reviews.trending.stream-interval:1s}") Duration streamInterval) {
+        this(reviewStreamPublisher, meterRegistry, bucket, maxWindow, maxMovies, maxK, streamInterval,
+                System::currentTimeMillis);
+    }
+
+    ReviewTrendTracker(ReviewStreamPublisher reviewStreamPublisher,
+                       MeterRegistry meterRegistry,
+                       Duration bucket,
+                       Duration maxWindow,
+                       int maxMovies,
+                       int maxK,
+                       Duration streamInterval,
+                       LongSupplier clock) {
+        this.bucketMillis = bucket.toMillis();
+        this.maxWindow = maxWindow;
+        this.maxMovies = maxMovies;
+        this.maxK = maxK;
+        this.streamInterval = streamInterval;
+        this.clock = clock;
+
+        this.buckets = new Bucket[(int) Math.max(1, (maxWindow.toMillis() + bucketMillis - 1) / bucketMillis)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(maxMovies);
+        }
+        this.untracked = Counter.builder("reviews.trending.untracked")
+                .description("Reviews left out of trending because a bucket already held max-movies movies")
+                .register(meterRegistry);
+
+        reviewStreamPublisher.reviews().subscribe(this::record);
+    }
+
+    synchronized void record(Review review) {
+        if (review.getMovieInfoId() == null) {
+            return;
+        }
+        var bucket = currentBucket(clock.getAsLong() / bucketMillis);
+        var rating = review.getRating();
+        if (!bucket.movieStats.add(review.getMovieInfoId(), 1, rating == null ? 0 : 1, rating == null ? 0.0 : rating)) {
+            untracked.increment();
+        }
+    }
+
+    /**
+     * The k movies with the most reviews, or the highest rating velocity, in the
+     * window ending now. The window is rounded up to whole buckets, the current
+     * one included.
+     */
+    public List<TrendingMovie> trending(Duration window, int k, TrendingOrder order) {
+        if (window.isNegative() || window.isZero() || window.compareTo(maxWindow) > 0) {
+            throw new ReviewDataException("window must be positive and at most " + maxWindow);
+        }
+        var size = size(k);
+        var windowBuckets = windowBuckets(window);
+        var windowMinutes = windowBuckets * bucketMillis / 60_000.0;
+
+        var windowStats = new ArrayList<MovieStatsMap>(windowBuckets);
+        synchronized (this) {
+            var now = clock.getAsLong() / bucketMillis;
+            for (long bucketNo = now - windowBuckets + 1; bucketNo <= now; bucketNo++) {
+                var bucket = buckets[index(bucketNo)];
+                if (bucket.bucketNo != bucketNo) {
+                    continue;
+                }
+                if (bucketNo == now) {
+                    windowStats.add(bucket.movieStats.copy());
+                    continue;
+                }
+                if (bucket.snapshot == null) {
+                    bucket.snapshot = bucket.movieStats.copy();
+                }
+                windowStats.add(bucket.snapshot);
+            }
+        }
+        // sized for the union, so a movie only counted in the newest buckets is never left out
+        var merged = new MovieStatsMap(windowStats.stream().mapToInt(MovieStatsMap::size).sum());
+        windowStats.forEach(merged::addAll);
+
+        Comparator<TrendingMovie> ranking = order == TrendingOrder.VELOCITY
+                ? Comparator.comparingDouble(TrendingMovie::getRatingVelocity)
+                : Comparator.comparingLong(TrendingMovie::getReviews);
+        // ties go to the lower movieInfoId, so the leaderboard is stable
+        ranking = ranking.thenComparing(TrendingMovie::getMovieInfoId, Comparator.reverseOrder());
+
+        // a min-heap of the best k seen so far, its head is the one to evict
+        var top = new PriorityQueue<TrendingMovie>(size + 1, ranking);
+        merged.forEach((movieInfoId, count, ratedCount, ratingSum) -> {
+            top.add(new TrendingMovie(movieInfoId, count,
+                    ratedCount == 0 ? null : ratingSum / ratedCount,
+                    ratingSum / windowMinutes));
+            if (top.size() > size) {
+                top.poll();
+            }
+        });
+
+        var leaderboard = new ArrayList<>(top);
+        leaderboard.sort(ranking.reversed());
+        return leaderboard;
+    }
+
+    /**
+     * The leaderboard, re-computed every reviews.trending.stream-interval and
+     * emitted whenever it differs from the last one sent. The computation runs
+     * while the leaderboard has subscribers, once for all of them, and a new
+     * subscriber starts with the last leaderboard sent. A slow subscriber skips
+     * to the latest one.
+     */
+    public Flux<List<TrendingMovie>> trendingUpdates(Duration window, int k, TrendingOrder order) {
+        // fails on invalid parameters before the stream starts
+        trending(window, k, order);
+        var leaderboard = List.<Object>of(windowBuckets(window), size(k), order);
+        return leaderboards.computeIfAbsent(leaderboard, key -> Flux.interval(Duration.ZERO, streamInterval)
+                        .onBackpressureDrop()
+                        .map(tick -> trending(window, k, order))
+                        .distinctUntilChanged()
+                        .replay(1)
+                        .refCount())
+                .onBackpressureLatest();
+    }
+
+    private int size(int k) {
+        return Math.max(1, Math.min(k, maxK));
+    }
+
+    private int windowBuckets(Duration window) {
+        return (int) Math.min(buckets.length, (window.toMillis() + bucketMillis - 1) / bucketMillis);
+    }
+
+    // the bucket of bucketNo, emptied first if it still holds an older time slice
+    private Bucket currentBucket(long bucketNo) {
+        var bucket = buckets[index(bucketNo)];
+        if (bucket.bucketNo != bucketNo) {
+            bucket.movieStats.clear();
+            bucket.bucketNo = bucketNo;
+            bucket.snapshot = null;
+        }
+        return bucket;
+    }
+
+    private int index(long bucketNo) {
+        return (int) Math.floorMod(bucketNo, (long) buckets.length);
+    }
+
+    private static class Bucket {
+        private final MovieStatsMap movieStats;
+        private long bucketNo = Long.MIN_VALUE;
+        // the copy of a past bucket, taken by the first query after its time slice ended
+        private MovieStatsMap snapshot;
+
+        private Bucket(int maxMovies) {
+            this.movieStats = new MovieStatsMap(maxMovies);
+        }
+    }
+}
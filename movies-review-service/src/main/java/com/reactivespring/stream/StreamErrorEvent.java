@@ -0,0 +1,16 @@
+package com.reactivespring.stream;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last event written to a stream before the server closes it.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StreamErrorEvent {
+
+    private String error;
+}
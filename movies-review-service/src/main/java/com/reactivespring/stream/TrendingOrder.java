@@ -0,0 +1,23 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.exception.ReviewDataException;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What the trending leaderboard ranks movies by.
+ */
+public enum TrendingOrder {
+
+    REVIEWS,
+    VELOCITY;
+
+    public static TrendingOrder fromParam(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new ReviewDataException("by must be one of " + Arrays.toString(values()));
+        }
+    }
+}
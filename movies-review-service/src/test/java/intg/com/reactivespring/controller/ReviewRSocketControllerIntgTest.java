@@ -0,0 +1,128 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.SocketUtils;
+import reactor.test.StepVerifier;
+
+import java.net.URI;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "reviews.multi-get.max-ids=3")
+@ActiveProfiles("test")
+class ReviewRSocketControllerIntgTest {
+
+    static int tcpPort = SocketUtils.findAvailableTcpPort();
+
+    @DynamicPropertySource
+    static void rSocketTcpPort(DynamicPropertyRegistry registry) {
+        registry.add("rsocket.tcp-port", () -> tcpPort);
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    RSocketRequester.Builder rSocketRequesterBuilder;
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    RSocketRequester rSocketRequester;
+
+    @BeforeEach
+    void setUp() {
+        reviewReactiveRepository.saveAll(List.of(
+                new Review("abc", 1L, "Awesome Movie", 9.0),
+                new Review("def", 1L, "Awesome Movie1", 9.0),
+                new Review("ghi", 2L, "Excellent Movie", 8.0)
+        )).blockLast();
+        rSocketRequester = rSocketRequesterBuilder.websocket(URI.create("ws://localhost:" + port + "/rsocket"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        rSocketRequester.dispose();
+        reviewReactiveRepository.deleteAll().block();
+    }
+
+    @Test
+    void getReviewById_overTcp() {
+        var tcpRequester = rSocketRequesterBuilder.tcp("localhost", tcpPort);
+
+        StepVerifier.create(tcpRequester.route("reviews.{id}", "abc").retrieveMono(Review.class))
+                .assertNext(review -> assertEquals("Awesome Movie", review.getComment()))
+                .verifyComplete();
+        tcpRequester.dispose();
+    }
+
+    @Test
+    void getReviewById() {
+        StepVerifier.create(rSocketRequester.route("reviews.{id}", "ghi").retrieveMono(Review.class))
+                .assertNext(review -> assertEquals(2L, review.getMovieInfoId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void getReviewsByMovieInfoId() {
+        StepVerifier.create(rSocketRequester.route("reviews.movie.{movieInfoId}", 1L).retrieveFlux(Review.class))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds() {
+        var movieReviews = rSocketRequester.route("reviews.movies")
+                .data(List.of(1L, 2L, 3L))
+                .retrieveFlux(MovieReviews.class)
+                .collectList()
+                .block();
+
+        // movies without reviews are left out
+        assertEquals(2, movieReviews.size());
+        assertEquals(2, movieReviews.stream()
+                .filter(reviews -> reviews.getMovieInfoId() == 1L)
+                .findFirst().orElseThrow()
+                .getReviews().size());
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_tooManyIds() {
+        var movieInfoIds = LongStream.rangeClosed(1, 4).boxed().collect(Collectors.toList());
+
+        var movieReviews = rSocketRequester.route("reviews.movies")
+                .data(movieInfoIds)
+                .retrieveFlux(MovieReviews.class);
+
+        StepVerifier.create(movieReviews)
+                .expectErrorMessage("At most 3 movieInfoIds can be requested at once")
+                .verify();
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_duplicatesCountOnce() {
+        var movieReviews = rSocketRequester.route("reviews.movies")
+                .data(List.of(1L, 2L, 3L, 1L, 2L))
+                .retrieveFlux(MovieReviews.class);
+
+        StepVerifier.create(movieReviews)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,71 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {"reviews.write-batch.enabled=true", "reviews.write-batch.max-wait=50ms"})
+@ActiveProfiles("test")
+class ReviewWriteCoalescerIntgTest {
+
+    @Autowired
+    ReviewWriteCoalescer reviewWriteCoalescer;
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+    }
+
+    @Test
+    void insert_concurrentInsertsAreBatched() {
+        var batchesBefore = meterRegistry.summary("reviews.write.batch.size").count();
+
+        var saved = Flux.range(0, 20)
+                .flatMap(i -> reviewWriteCoalescer.insert(new Review(null, 1L, "Review " + i, 8.0)))
+                .collectList()
+                .block();
+
+        assertEquals(20, saved.size());
+        assertEquals(20, saved.stream().map(Review::getReviewId).collect(Collectors.toSet()).size());
+        assertEquals(20L, reviewReactiveRepository.findAllByMovieInfoId(1L).count().block());
+        assertTrue(meterRegistry.summary("reviews.write.batch.size").count() - batchesBefore < 20);
+    }
+
+    @Test
+    void insert_withIdIsSaved() {
+        var saved = reviewWriteCoalescer.insert(new Review("abc", 1L, "Awesome Movie", 9.0)).block();
+
+        assertEquals("abc", saved.getReviewId());
+        assertEquals("Awesome Movie", reviewReactiveRepository.findById("abc").block().getComment());
+    }
+
+    @Test
+    void insert_withExistingIdKeepsTheStoredReview() {
+        var createdAt = reviewWriteCoalescer.insert(new Review("abc", 1L, "Awesome Movie", 9.0)).block().getCreatedAt();
+
+        assertThrows(DuplicateKeyException.class,
+                () -> reviewWriteCoalescer.insert(new Review("abc", 1L, "Bad Movie", 2.0)).block());
+
+        var stored = reviewReactiveRepository.findById("abc").block();
+        assertEquals("Awesome Movie", stored.getComment());
+        assertEquals(createdAt.toEpochMilli(), stored.getCreatedAt().toEpochMilli());
+    }
+}
@@ -1,20 +1,28 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.eventlog.JsonEventLog;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test") // cannot use any of created profiles
@@ -27,6 +35,15 @@ public class ReviewsIntgTest {
     @Autowired
     ReviewReactiveRepository reviewReactiveRepository;
 
+    @Autowired
+    ReviewSummaryRepository reviewSummaryRepository;
+
+    @Autowired
+    JsonEventLog<Review> reviewEventLog;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
         var reviewsList = List.of(
@@ -40,6 +57,7 @@ public class ReviewsIntgTest {
     @AfterEach
     void tearDown() {
         reviewReactiveRepository.deleteAll().block();
+        reviewSummaryRepository.deleteAll().block();
     }
 
     static String REVIEWS_URI = "/v1/reviews";
@@ -123,6 +141,46 @@ public class ReviewsIntgTest {
                 .expectStatus().isNoContent();
     }
 
+    @Test
+    void deleteReview_notFound() {
+        webTestClient
+                .delete()
+                .uri(REVIEWS_URI + "/{id}", "def")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void updateReview_versionConflict() {
+        //given
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+        var savedReview = reviewReactiveRepository.save(review).block();
+        var reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", 8.0, 0L);
+        assert savedReview != null;
+
+        //when
+        webTestClient
+                .put()
+                .uri(REVIEWS_URI + "/{id}", savedReview.getReviewId())
+                .bodyValue(reviewUpdate)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Review.class)
+                .consumeWith(reviewResponse -> {
+                    var updatedReview = reviewResponse.getResponseBody();
+                    assert updatedReview != null;
+                    assertEquals(1L, updatedReview.getVersion());
+                });
+
+        // a second writer still holding version 0 must not overwrite the first update
+        webTestClient
+                .put()
+                .uri(REVIEWS_URI + "/{id}", savedReview.getReviewId())
+                .bodyValue(reviewUpdate)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+    }
+
     @Test
     void getReviewsByMovieInfoId() {
         //given
@@ -145,4 +203,216 @@ public class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void getReviewsByMovieInfoId_mongoMetrics() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "?movieInfoId=1")
+                .exchange()
+                .expectStatus().isOk();
+
+        // the find is tagged with the repository method that issued it
+        var finds = meterRegistry.get("mongodb.repository.commands")
+                .tags("command", "find", "collection", "review",
+                        "repository.method", "ReviewReactiveRepository.findAllByMovieInfoId")
+                .timer();
+        assertTrue(finds.count() > 0);
+        var documents = meterRegistry.get("mongodb.repository.documents")
+                .tags("command", "find", "repository.method", "ReviewReactiveRepository.findAllByMovieInfoId")
+                .summary();
+        assertTrue(documents.totalAmount() >= 2);
+    }
+
+    @Test
+    void getReviewsByMovieInfoId_sortedAndLimited() {
+        //given
+        addReview(new Review(null, 4L, "Good Movie", 7.0));
+        addReview(new Review(null, 4L, "Great Movie", 9.5));
+        addReview(new Review(null, 4L, "Bad Movie", 3.0));
+        var newest = addReview(new Review(null, 4L, "Fine Movie", 6.0));
+
+        //when
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "?movieInfoId=4&sort=rating&limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(2, reviews.size());
+                    assertEquals(9.5, reviews.get(0).getRating());
+                    assertEquals(7.0, reviews.get(1).getRating());
+                });
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "?movieInfoId=4&sort=createdAt&limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Review.class)
+                .value(reviews -> assertEquals(newest.getReviewId(), reviews.get(0).getReviewId()));
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_groupedByMovie() {
+        //given the reviews of setUp, and no reviews for movie 3
+
+        //when
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "?movieInfoIds=3,2,1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieReviews.class)
+                .value(movieReviews -> {
+                    assertEquals(2, movieReviews.size());
+                    assertEquals(1L, movieReviews.get(0).getMovieInfoId());
+                    assertEquals(2, movieReviews.get(0).getReviews().size());
+                    assertEquals(2L, movieReviews.get(1).getMovieInfoId());
+                    assertEquals(1, movieReviews.get(1).getReviews().size());
+                });
+    }
+
+    @Test
+    void getReviewsForMovies_limitPerMovie() {
+        //given
+        addReview(new Review(null, 2L, "Great Movie", 9.5));
+
+        //when
+        webTestClient
+                .post()
+                .uri(REVIEWS_URI + "/movies?sort=rating&limit=1")
+                .bodyValue(List.of(1L, 2L, 3L))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieReviews.class)
+                .value(movieReviews -> {
+                    assertEquals(2, movieReviews.size());
+                    assertEquals(1, movieReviews.get(0).getReviews().size());
+                    assertEquals(1, movieReviews.get(1).getReviews().size());
+                    assertEquals(9.5, movieReviews.get(1).getReviews().get(0).getRating());
+                });
+    }
+
+    @Test
+    void getReviewsStream_fromOffset() {
+        //given
+        var fromOffset = reviewEventLog.latestOffset();
+        addReview(new Review(null, 5L, "Good Movie", 7.0));
+        addReview(new Review(null, 6L, "Great Movie", 9.0));
+        addReview(new Review(null, 5L, "Fine Movie", 6.0));
+
+        //when
+        var reviews = webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/stream?movieInfoId=5&fromOffset=" + fromOffset)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then the logged history is replayed, filtered to the movie, and the movie's live reviews follow
+        StepVerifier.create(reviews)
+                .assertNext(review -> assertEquals("Good Movie", review.getComment()))
+                .assertNext(review -> assertEquals("Fine Movie", review.getComment()))
+                .then(() -> {
+                    addReview(new Review(null, 6L, "Other Movie", 5.0));
+                    addReview(new Review(null, 5L, "Live Movie", 8.0));
+                })
+                .assertNext(review -> assertEquals("Live Movie", review.getComment()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void getReviewSummary_followsWrites() {
+        //given
+        var first = addReview(new Review(null, 3L, "Good Movie", 8.0));
+        var second = addReview(new Review(null, 3L, "Fine Movie", 6.0));
+
+        //when
+        webTestClient
+                .put()
+                .uri(REVIEWS_URI + "/{id}", first.getReviewId())
+                .bodyValue(new Review(null, 3L, null, 9.0))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient
+                .delete()
+                .uri(REVIEWS_URI + "/{id}", second.getReviewId())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        //then
+        var reviewSummary = getReviewSummary(3L);
+        assertEquals(1L, reviewSummary.getCount());
+        assertEquals(9.0, reviewSummary.getSum());
+        assertEquals(81.0, reviewSummary.getSumOfSquares());
+        assertEquals(1L, reviewSummary.getHistogram().get("9"));
+        assertEquals(0L, reviewSummary.getHistogram().get("8"));
+    }
+
+    @Test
+    void addReview_existingIdIsRejected() {
+        //given
+        var existing = addReview(new Review(null, 3L, "Good Movie", 8.0));
+
+        //when
+        webTestClient
+                .post()
+                .uri(REVIEWS_URI)
+                .bodyValue(new Review(existing.getReviewId(), 3L, "Bad Movie", 2.0))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+
+        //then
+        assertEquals("Good Movie", reviewReactiveRepository.findById(existing.getReviewId()).block().getComment());
+        var reviewSummary = getReviewSummary(3L);
+        assertEquals(1L, reviewSummary.getCount());
+        assertEquals(8.0, reviewSummary.getSum());
+    }
+
+    @Test
+    void repairReviewSummaries() {
+        //given the reviews of setUp, saved without summaries
+
+        //when
+        webTestClient
+                .post()
+                .uri(REVIEWS_URI + "/summaries/repair")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.repaired").isEqualTo(2);
+
+        //then
+        var reviewSummary = getReviewSummary(1L);
+        assertEquals(2L, reviewSummary.getCount());
+        assertEquals(18.0, reviewSummary.getSum());
+        assertEquals(2L, reviewSummary.getHistogram().get("9"));
+    }
+
+    private Review addReview(Review review) {
+        return webTestClient
+                .post()
+                .uri(REVIEWS_URI)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private ReviewSummary getReviewSummary(Long movieInfoId) {
+        return webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/summary?movieInfoId={id}", movieInfoId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ReviewSummary.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
 }
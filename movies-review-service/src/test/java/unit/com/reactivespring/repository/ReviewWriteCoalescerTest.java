@@ -0,0 +1,58 @@
+package com.reactivespring.repository;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewWriteOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReviewWriteCoalescerTest {
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // a coalescer whose batches are never written, as if MongoDB stopped answering
+    private ReviewWriteCoalescer stalledCoalescer(int maxPending) {
+        var reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+        when(reactiveMongoTemplate.getConverter()).thenReturn(mock(MongoConverter.class));
+        when(reactiveMongoTemplate.getCollectionName(Review.class)).thenReturn("review");
+        when(reactiveMongoTemplate.getCollection("review")).thenReturn(Mono.<MongoCollection<Document>>never());
+        return new ReviewWriteCoalescer(mock(ReviewSummaryRepository.class), reactiveMongoTemplate,
+                meterRegistry, true, 1, Duration.ofMillis(1), 4, maxPending, Duration.ofMillis(100), "acknowledged");
+    }
+
+    @Test
+    void insert_failsFastBeyondMaxPending() {
+        var coalescer = stalledCoalescer(2);
+        coalescer.insert(new Review(null, 1L, "Awesome Movie", 9.0)).subscribe();
+        coalescer.insert(new Review(null, 1L, "Awesome Movie", 9.0)).subscribe();
+
+        StepVerifier.create(coalescer.insert(new Review(null, 1L, "Awesome Movie", 9.0)))
+                .expectError(ReviewWriteOverloadedException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(1.0, meterRegistry.counter("reviews.write.batch.rejected").count());
+    }
+
+    @Test
+    void stop_givesUpAfterShutdownTimeout() {
+        var coalescer = stalledCoalescer(2);
+        coalescer.insert(new Review(null, 1L, "Awesome Movie", 9.0)).subscribe();
+
+        assertTimeout(Duration.ofSeconds(5), coalescer::stop);
+
+        StepVerifier.create(coalescer.insert(new Review(null, 1L, "Awesome Movie", 9.0)))
+                .expectError(ReviewWriteOverloadedException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+}
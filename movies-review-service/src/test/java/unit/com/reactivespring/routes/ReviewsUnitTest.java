@@ -1,22 +1,36 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.eventlog.EventLogTopics;
+import com.reactivespring.eventlog.JsonEventLog;
 import com.reactivespring.exceptionhandler.GlobalErrorHandler;
 import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.repository.ReviewWriteCoalescer;
 import com.reactivespring.router.ReviewRouter;
+import com.reactivespring.stream.ReviewStreamPublisher;
+import com.reactivespring.stream.ReviewTrendTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -24,24 +38,43 @@ import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest
-@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class}) // inject these classes as beans
+@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class,
+        ReviewStreamPublisher.class, ReviewWriteCoalescer.class, ReviewTrendTracker.class,
+        SimpleMeterRegistry.class}) // inject these classes as beans
 @AutoConfigureWebTestClient
 public class ReviewsUnitTest {
 
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @MockBean
+    private ReviewSummaryRepository reviewSummaryRepository;
+
+    @MockBean
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @MockBean
+    private JsonEventLog<Review> reviewEventLog;
+
+    @MockBean
+    private EventLogTopics<Long, Review> reviewEventLogTopics;
+
     @Autowired
     private WebTestClient webTestClient;
 
     static String REVIEWS_URI = "/v1/reviews";
 
+    @BeforeEach
+    void setUp() {
+        when(reviewSummaryRepository.applyRatingChange(any(), any(), any())).thenReturn(Mono.empty());
+    }
+
     @Test
     void addReview() {
         // given
         var newReview = new Review(null, 1L, "Awesome Movie", 9.0);
 
-        when(reviewReactiveRepository.save(isA(Review.class)))
+        when(reviewReactiveRepository.insert(isA(Review.class)))
                 .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
 
         // when
@@ -65,7 +98,7 @@ public class ReviewsUnitTest {
         // given
         var newReview = new Review(null, null, "Awesome Movie", -9.0);
 
-        when(reviewReactiveRepository.save(isA(Review.class)))
+        when(reviewReactiveRepository.insert(isA(Review.class)))
                 .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
 
         // when
@@ -103,13 +136,91 @@ public class ReviewsUnitTest {
                 });
     }
 
+    @Test
+    void getReviews_sortedAndLimited() {
+        //given
+        var pageRequest = PageRequest.of(0, 2,
+                Sort.by(Sort.Direction.DESC, "rating").and(Sort.by(Sort.Direction.DESC, "reviewId")));
+        when(reviewReactiveRepository.findAllByMovieInfoId(1L, pageRequest))
+                .thenReturn(Flux.just(new Review("abc", 1L, "Awesome Movie", 9.0),
+                        new Review("def", 1L, "Good Movie", 7.0)));
+
+        //when
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "?movieInfoId=1&sort=rating&limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getReviews_sortWithoutMovieInfoId() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "?sort=rating")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getReviews_groupedByMovie() {
+        //given
+        when(reviewReactiveRepository.findAllGroupedByMovieInfoIds(List.of(2L, 1L), Sort.unsorted(), null))
+                .thenReturn(Flux.just(
+                        new MovieReviews(1L, List.of(new Review("abc", 1L, "Awesome Movie", 9.0))),
+                        new MovieReviews(2L, List.of(new Review("def", 2L, "Good Movie", 7.0),
+                                new Review("ghi", 2L, "Fine Movie", 6.0)))));
+
+        //when
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "?movieInfoIds=2,1,2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieReviews.class)
+                .value(movieReviews -> {
+                    assertEquals(2, movieReviews.size());
+                    assertEquals(1L, movieReviews.get(0).getMovieInfoId());
+                    assertEquals(2, movieReviews.get(1).getReviews().size());
+                });
+    }
+
+    @Test
+    void getReviewsForMovies_limitPerMovie() {
+        //given
+        var sort = Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "reviewId"));
+        when(reviewReactiveRepository.findAllGroupedByMovieInfoIds(List.of(1L, 2L), sort, 1))
+                .thenReturn(Flux.just(new MovieReviews(1L, List.of(new Review("abc", 1L, "Awesome Movie", 9.0)))));
+
+        //when
+        webTestClient
+                .post()
+                .uri(REVIEWS_URI + "/movies?sort=createdAt&limit=1")
+                .bodyValue(List.of(1L, 2L))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieReviews.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getReviews_movieInfoIdAndMovieInfoIds() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "?movieInfoId=1&movieInfoIds=1,2")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     void updateReview() {
         //given
         var reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", 8.0);
 
-        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Not an Awesome Movie", 8.0)));
-        when(reviewReactiveRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewReactiveRepository.updateReview(isA(String.class), isA(Review.class)))
+                .thenReturn(Mono.just(new Review("abc", 1L, "Not an Awesome Movie", 8.0)));
 
         //when
         webTestClient
@@ -132,8 +243,7 @@ public class ReviewsUnitTest {
     void deleteReview() {
         //given
         var reviewId= "abc";
-        when(reviewReactiveRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
-        when(reviewReactiveRepository.deleteById((String) any())).thenReturn(Mono.empty());
+        when(reviewReactiveRepository.removeReview((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
 
         //when
         webTestClient
@@ -143,4 +253,126 @@ public class ReviewsUnitTest {
                 .expectStatus().isNoContent();
     }
 
+    @Test
+    void updateReview_notFound() {
+        //given
+        var reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", 8.0);
+        when(reviewReactiveRepository.updateReview(isA(String.class), isA(Review.class))).thenReturn(Mono.empty());
+
+        //when
+        webTestClient
+                .put()
+                .uri(REVIEWS_URI + "/{id}", "abc")
+                .bodyValue(reviewUpdate)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void deleteReview_notFound() {
+        //given
+        when(reviewReactiveRepository.removeReview((String) any())).thenReturn(Mono.empty());
+
+        //when
+        webTestClient
+                .delete()
+                .uri(REVIEWS_URI + "/{id}", "abc")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void getReviewsStream_invalidMovieInfoId() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/stream?movieInfoId=abc")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getTrending_invalidWindow() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/trending?window=soon")
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/trending?window=1d")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getReviewsStream_unknownOffset() {
+        when(reviewEventLog.isValidOffset(42L)).thenReturn(false);
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/stream?fromOffset=42")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getReviewsStream_invalidOverflowPolicy() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/stream?overflow=block")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getReviewSummary() {
+        //given
+        when(reviewSummaryRepository.findById(1L))
+                .thenReturn(Mono.just(new ReviewSummary(1L, 2, 17.0, 145.0, Map.of("8", 1L, "9", 1L))));
+
+        //when
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/summary?movieInfoId=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.average").isEqualTo(8.5)
+                .jsonPath("$.standardDeviation").isEqualTo(0.5)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+    }
+
+    @Test
+    void getReviewSummary_invalidMovieInfoId() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/summary?movieInfoId=abc")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getReviewSummaries() {
+        //given
+        when(reviewSummaryRepository.findAllById(List.of(2L, 1L)))
+                .thenReturn(Flux.just(new ReviewSummary(1L, 1, 9.0, 81.0, Map.of("9", 1L))));
+
+        //when
+        webTestClient
+                .get()
+                .uri(REVIEWS_URI + "/summaries?movieInfoIds=2,1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ReviewSummary.class)
+                .value(reviewSummaries -> {
+                    // movies without a stored summary come back empty, in request order
+                    assertEquals(2, reviewSummaries.size());
+                    assertEquals(2L, reviewSummaries.get(0).getMovieInfoId());
+                    assertEquals(0L, reviewSummaries.get(0).getCount());
+                    assertEquals(9.0, reviewSummaries.get(1).getSum());
+                });
+    }
+
 }
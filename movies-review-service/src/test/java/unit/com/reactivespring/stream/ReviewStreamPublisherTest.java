@@ -0,0 +1,84 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReviewStreamPublisherTest {
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void dropOldest() {
+        var publisher = new ReviewStreamPublisher(2, "drop-oldest", meterRegistry);
+
+        StepVerifier.create(publisher.subscribe(OverflowPolicy.DROP_OLDEST), 0)
+                .then(() -> {
+                    publisher.publish(new Review("1", 1L, "Awesome Movie", 9.0));
+                    publisher.publish(new Review("2", 1L, "Awesome Movie", 9.0));
+                    publisher.publish(new Review("3", 1L, "Awesome Movie", 9.0));
+                })
+                .thenRequest(2)
+                .expectNextMatches(review -> ((Review) review).getReviewId().equals("2"))
+                .expectNextMatches(review -> ((Review) review).getReviewId().equals("3"))
+                .thenCancel()
+                .verify();
+
+        assertEquals(1.0, meterRegistry.counter("reviews.stream.dropped", "policy", "drop_oldest").count());
+    }
+
+    @Test
+    void dropNewest() {
+        var publisher = new ReviewStreamPublisher(2, "drop-newest", meterRegistry);
+
+        StepVerifier.create(publisher.subscribe(OverflowPolicy.DROP_NEWEST), 0)
+                .then(() -> {
+                    publisher.publish(new Review("1", 1L, "Awesome Movie", 9.0));
+                    publisher.publish(new Review("2", 1L, "Awesome Movie", 9.0));
+                    publisher.publish(new Review("3", 1L, "Awesome Movie", 9.0));
+                })
+                .thenRequest(2)
+                .expectNextMatches(review -> ((Review) review).getReviewId().equals("1"))
+                .expectNextMatches(review -> ((Review) review).getReviewId().equals("2"))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void movieTopic() {
+        var publisher = new ReviewStreamPublisher(2, "drop-oldest", meterRegistry);
+
+        StepVerifier.create(publisher.subscribe(OverflowPolicy.DROP_OLDEST, 2L))
+                .then(() -> {
+                    publisher.publish(new Review("1", 1L, "Awesome Movie", 9.0));
+                    publisher.publish(new Review("2", 2L, "Excellent Movie", 8.0));
+                })
+                .expectNextMatches(review -> ((Review) review).getReviewId().equals("2"))
+                .then(() -> assertEquals(1.0, meterRegistry.get("reviews.stream.topics").gauge().value()))
+                .thenCancel()
+                .verify();
+
+        // the topic goes away with its last subscriber
+        assertEquals(0.0, meterRegistry.get("reviews.stream.topics").gauge().value());
+    }
+
+    @Test
+    void disconnect() {
+        var publisher = new ReviewStreamPublisher(2, "disconnect", meterRegistry);
+
+        StepVerifier.create(publisher.subscribe(OverflowPolicy.DISCONNECT), 0)
+                .then(() -> {
+                    publisher.publish(new Review("1", 1L, "Awesome Movie", 9.0));
+                    publisher.publish(new Review("2", 1L, "Awesome Movie", 9.0));
+                    publisher.publish(new Review("3", 1L, "Awesome Movie", 9.0));
+                })
+                .thenRequest(1)
+                .expectNextMatches(event -> event instanceof StreamErrorEvent)
+                .verifyComplete();
+
+        assertEquals(1.0, meterRegistry.counter("reviews.stream.disconnects").count());
+    }
+}
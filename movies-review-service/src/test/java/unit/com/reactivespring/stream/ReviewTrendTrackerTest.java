@@ -0,0 +1,153 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewDataException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReviewTrendTrackerTest {
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ReviewStreamPublisher publisher = new ReviewStreamPublisher(256, "drop-oldest", meterRegistry);
+    private AtomicLong now = new AtomicLong(Duration.ofHours(10).toMillis());
+
+    private ReviewTrendTracker tracker(int maxMovies) {
+        return new ReviewTrendTracker(publisher, meterRegistry, Duration.ofMinutes(1), Duration.ofHours(1),
+                maxMovies, 100, Duration.ofSeconds(1), now::get);
+    }
+
+    @Test
+    void trendingByReviews() {
+        var tracker = tracker(100);
+        publisher.publish(new Review(null, 1L, "Awesome Movie", 9.0));
+        publisher.publish(new Review(null, 2L, "Excellent Movie", 8.0));
+        publisher.publish(new Review(null, 2L, "Excellent Movie", 6.0));
+        publisher.publish(new Review(null, 3L, "Unrated", null));
+
+        var trending = tracker.trending(Duration.ofMinutes(15), 2, TrendingOrder.REVIEWS);
+
+        assertEquals(2, trending.size());
+        assertEquals(2L, trending.get(0).getMovieInfoId());
+        assertEquals(2L, trending.get(0).getReviews());
+        assertEquals(7.0, trending.get(0).getAverageRating());
+        // movies 1 and 3 tie on one review, the lower id wins
+        assertEquals(1L, trending.get(1).getMovieInfoId());
+    }
+
+    @Test
+    void trendingByVelocity() {
+        var tracker = tracker(100);
+        publisher.publish(new Review(null, 1L, "Awesome Movie", 9.0));
+        publisher.publish(new Review(null, 2L, "Bad Movie", 1.0));
+        publisher.publish(new Review(null, 2L, "Bad Movie", 2.0));
+        publisher.publish(new Review(null, 3L, "Unrated", null));
+
+        var trending = tracker.trending(Duration.ofMinutes(3), 3, TrendingOrder.VELOCITY);
+
+        assertEquals(1L, trending.get(0).getMovieInfoId());
+        assertEquals(3.0, trending.get(0).getRatingVelocity());
+        assertEquals(2L, trending.get(1).getMovieInfoId());
+        assertNull(trending.get(2).getAverageRating());
+    }
+
+    @Test
+    void reviewsLeaveTheWindow() {
+        var tracker = tracker(100);
+        publisher.publish(new Review(null, 1L, "Awesome Movie", 9.0));
+        now.addAndGet(Duration.ofMinutes(20).toMillis());
+        publisher.publish(new Review(null, 2L, "Excellent Movie", 8.0));
+
+        assertEquals(1, tracker.trending(Duration.ofMinutes(15), 20, TrendingOrder.REVIEWS).size());
+        assertEquals(2, tracker.trending(Duration.ofMinutes(30), 20, TrendingOrder.REVIEWS).size());
+
+        // an hour later the ring has wrapped and reuses the buckets
+        now.addAndGet(Duration.ofHours(1).toMillis());
+        publisher.publish(new Review(null, 3L, "Good Movie", 7.0));
+        var trending = tracker.trending(Duration.ofHours(1), 20, TrendingOrder.REVIEWS);
+        assertEquals(1, trending.size());
+        assertEquals(3L, trending.get(0).getMovieInfoId());
+    }
+
+    @Test
+    void snapshotsOfPastBucketsAreDroppedWithTheirBucket() {
+        var tracker = tracker(100);
+        publisher.publish(new Review(null, 1L, "Awesome Movie", 9.0));
+        now.addAndGet(Duration.ofMinutes(1).toMillis());
+        // the first bucket is over, the query snapshots it
+        assertEquals(1L, tracker.trending(Duration.ofMinutes(2), 20, TrendingOrder.REVIEWS).get(0).getMovieInfoId());
+
+        now.addAndGet(Duration.ofMinutes(59).toMillis());
+        // the ring wraps into the first bucket again
+        publisher.publish(new Review(null, 2L, "Excellent Movie", 8.0));
+        now.addAndGet(Duration.ofMinutes(1).toMillis());
+
+        var trending = tracker.trending(Duration.ofMinutes(2), 20, TrendingOrder.REVIEWS);
+        assertEquals(1, trending.size());
+        assertEquals(2L, trending.get(0).getMovieInfoId());
+    }
+
+    @Test
+    void trendingUpdatesAreSharedPerLeaderboard() {
+        var tracker = tracker(100);
+        publisher.publish(new Review(null, 1L, "Awesome Movie", 9.0));
+
+        StepVerifier.withVirtualTime(() -> tracker.trendingUpdates(Duration.ofMinutes(15), 20, TrendingOrder.REVIEWS))
+                .assertNext(trending -> assertEquals(1, trending.size()))
+                .then(() -> publisher.publish(new Review(null, 2L, "Excellent Movie", 8.0)))
+                .thenAwait(Duration.ofSeconds(1))
+                .assertNext(trending -> assertEquals(2, trending.size()))
+                // the same leaderboard, the window rounds up to 15 buckets as well; it starts with the last one sent
+                .then(() -> assertEquals(2, tracker.trendingUpdates(Duration.ofSeconds(14 * 60 + 30), 20,
+                        TrendingOrder.REVIEWS).blockFirst().size()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void bucketsAreBounded() {
+        var tracker = tracker(50);
+        for (long movieInfoId = 1; movieInfoId <= 60; movieInfoId++) {
+            publisher.publish(new Review(null, movieInfoId, "Movie " + movieInfoId, 5.0));
+        }
+
+        assertEquals(50, tracker.trending(Duration.ofMinutes(1), 100, TrendingOrder.REVIEWS).size());
+        assertEquals(10.0, meterRegistry.counter("reviews.trending.untracked").count());
+        // only recording counts reviews as untracked, queries do not
+        tracker.trending(Duration.ofMinutes(1), 100, TrendingOrder.REVIEWS);
+        assertEquals(10.0, meterRegistry.counter("reviews.trending.untracked").count());
+    }
+
+    @Test
+    void newestMoviesSurviveTheMerge() {
+        var tracker = tracker(50);
+        for (long movieInfoId = 1; movieInfoId <= 50; movieInfoId++) {
+            publisher.publish(new Review(null, movieInfoId, "Movie " + movieInfoId, 5.0));
+        }
+        now.addAndGet(Duration.ofMinutes(1).toMillis());
+        // the window now counts 51 movies, more than any one bucket may hold
+        publisher.publish(new Review(null, 51L, "New Movie", 9.0));
+        publisher.publish(new Review(null, 51L, "New Movie", 9.0));
+
+        var trending = tracker.trending(Duration.ofMinutes(2), 1, TrendingOrder.REVIEWS);
+
+        assertEquals(51L, trending.get(0).getMovieInfoId());
+        assertEquals(2L, trending.get(0).getReviews());
+        assertEquals(0.0, meterRegistry.counter("reviews.trending.untracked").count());
+    }
+
+    @Test
+    void windowLongerThanMaxWindow() {
+        var tracker = tracker(100);
+
+        assertThrows(ReviewDataException.class,
+                () -> tracker.trending(Duration.ofHours(2), 20, TrendingOrder.REVIEWS));
+    }
+}
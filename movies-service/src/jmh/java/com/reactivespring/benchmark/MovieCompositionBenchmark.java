@@ -0,0 +1,98 @@
+package com.reactivespring.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.util.MovieJsonUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building GET /v1/movies/{id} from the two upstream bodies, decoded into
+ * a Movie and encoded again versus spliced as received, by number of reviews.
+ * Both start from the bodies in pooled buffers, as the WebClient hands them over,
+ * and release the result as the response writer would. Run with ./gradlew jmh,
+ * the gc profiler's gc.alloc.rate.norm is the allocation per Movie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MovieCompositionBenchmark {
+
+    private static final TypeReference<List<Review>> REVIEW_LIST = new TypeReference<>() {
+    };
+
+    @Param({"1", "100", "1000"})
+    private int reviews;
+
+    private NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private ObjectMapper objectMapper;
+    private byte[] movieInfoBody;
+    private byte[] reviewListBody;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        movieInfoBody = objectMapper.writeValueAsBytes(new MovieInfo("1", "Batman Begins", 2005,
+                List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+        var reviewList = new ArrayList<Review>();
+        for (int i = 0; i < reviews; i++) {
+            reviewList.add(new Review(String.valueOf(i), 1L, "Review number " + i + " of an awesome movie", 8.5));
+        }
+        reviewListBody = objectMapper.writeValueAsBytes(reviewList);
+    }
+
+    private DataBuffer received(byte[] body) {
+        return bufferFactory.allocateBuffer(body.length).write(body);
+    }
+
+    @Benchmark
+    public int decodeAndEncode() throws Exception {
+        var movieInfoJson = received(movieInfoBody);
+        var reviewListJson = received(reviewListBody);
+        var movieInfo = objectMapper.readValue(movieInfoJson.asInputStream(true), MovieInfo.class);
+        var reviewList = objectMapper.readValue(reviewListJson.asInputStream(true), REVIEW_LIST);
+        return write(bufferFactory.wrap(objectMapper.writeValueAsBytes(new Movie(movieInfo, reviewList))));
+    }
+
+    @Benchmark
+    public int splice() {
+        return write(MovieJsonUtil.toMovieJson(objectMapper.getFactory(),
+                received(movieInfoBody), received(reviewListBody)));
+    }
+
+    // stands in for the response writer, which releases the body once it is sent
+    private int write(DataBuffer buffer) {
+        var written = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return written;
+    }
+}
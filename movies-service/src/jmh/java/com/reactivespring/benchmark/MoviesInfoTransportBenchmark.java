@@ -0,0 +1,178 @@
+package com.reactivespring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reactivespring.client.MoviesInfoClient;
+import com.reactivespring.client.MoviesInfoRSocketClient;
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.domain.MovieInfo;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.DefaultPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MoviesInfo Service calls per second over HTTP (MoviesInfoRestClient) and over
+ * RSocket on TCP (MoviesInfoRSocketClient), through the client classes the
+ * service uses, with 16 callers sharing one client: the MovieInfo JSON of
+ * GET /v1/movies/{id} and the lines of /v1/movies/stream, counted per MovieInfo.
+ * In-process stub servers answer with fixed JSON, so the difference is the
+ * transport and the client's framing. Run with ./gradlew jmh
+ * -PjmhIncludes=MoviesInfoTransport, the gc profiler's gc.alloc.rate.norm is the
+ * allocation per call, client and stub server together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class MoviesInfoTransportBenchmark {
+
+    private static final int MOVIE_INFOS = 1000;
+
+    @Param({"http", "rsocket"})
+    private String transport;
+
+    private DisposableServer httpServer;
+    private CloseableChannel rSocketServer;
+    private RSocketRequester rSocketRequester;
+    private MoviesInfoClient moviesInfoClient;
+
+    @Setup
+    public void setUp() throws Exception {
+        var objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        var movieInfoJson = objectMapper.writeValueAsBytes(new MovieInfo("abc", "Batman Begins", 2005,
+                List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+        // one MovieInfo per RSocket payload, the same with a newline per NDJSON line
+        var streamLines = new ArrayList<byte[]>(MOVIE_INFOS);
+        var ndjsonLines = new ArrayList<byte[]>(MOVIE_INFOS);
+        for (int i = 0; i < MOVIE_INFOS; i++) {
+            var json = objectMapper.writeValueAsBytes(new MovieInfo(String.valueOf(i), "Movie " + i, 2005,
+                    List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+            streamLines.add(json);
+            ndjsonLines.add(withNewline(json));
+        }
+
+        if ("http".equals(transport)) {
+            httpServer = HttpServer.create()
+                    .host("localhost")
+                    .port(0)
+                    .route(routes -> routes
+                            .get("/v1/moviesinfo/stream", (request, response) -> response
+                                    .header("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                                    .sendByteArray(Flux.fromIterable(ndjsonLines)))
+                            .get("/v1/moviesinfo/{id}", (request, response) -> response
+                                    .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                                    .sendByteArray(Mono.just(movieInfoJson))))
+                    .bindNow();
+            var restClient = new MoviesInfoRestClient(WebClient.create());
+            setField(restClient, "moviesInfoUrl", "http://localhost:" + httpServer.port() + "/v1/moviesinfo");
+            setField(restClient, "maxLineSize", DataSize.ofKilobytes(256));
+            moviesInfoClient = restClient;
+        } else {
+            rSocketServer = RSocketServer.create(SocketAcceptor.with(new RSocket() {
+                        @Override
+                        public Mono<Payload> requestResponse(Payload payload) {
+                            payload.release();
+                            return Mono.just(DefaultPayload.create(movieInfoJson));
+                        }
+
+                        @Override
+                        public Flux<Payload> requestStream(Payload payload) {
+                            payload.release();
+                            return Flux.fromIterable(streamLines).map(DefaultPayload::create);
+                        }
+                    }))
+                    .bind(TcpServerTransport.create("localhost", 0))
+                    .block();
+            rSocketRequester = RSocketRequester.builder()
+                    .dataMimeType(MediaType.APPLICATION_JSON)
+                    .tcp("localhost", rSocketServer.address().getPort());
+            moviesInfoClient = new MoviesInfoRSocketClient(rSocketRequester);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (httpServer != null) {
+            httpServer.disposeNow();
+        }
+        if (rSocketRequester != null) {
+            rSocketRequester.dispose();
+            rSocketServer.dispose();
+        }
+    }
+
+    @Benchmark
+    public long movieInfoJson() {
+        return write(moviesInfoClient.retrieveMovieInfoJson("abc").block());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVIE_INFOS)
+    public long movieInfoStreamLines() {
+        return moviesInfoClient.retrieveMoviesInfoStreamLines()
+                .map(this::write)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    // stands in for the response writer, which releases every buffer once it is sent
+    private long write(DataBuffer buffer) {
+        long written = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return written;
+    }
+
+    private static byte[] withNewline(byte[] line) {
+        var withNewline = new byte[line.length + 1];
+        System.arraycopy(line, 0, withNewline, 0, line.length);
+        withNewline[line.length] = '\n';
+        return withNewline;
+    }
+
+    // the clients' @Value fields, set as Spring would
+    private static void setField(Object target, String name, Object value) {
+        var field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
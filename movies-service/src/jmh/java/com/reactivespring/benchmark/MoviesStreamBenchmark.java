@@ -0,0 +1,112 @@
+package com.reactivespring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.util.NdjsonUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per MovieInfo of relaying the MoviesInfo Service NDJSON stream, decoded
+ * and encoded again as before versus passed through as lines.
+ * Both read the same body, received in 8KB chunks of pooled buffers, and release
+ * what they produce as the response writer would. Run with ./gradlew jmh, the
+ * gc profiler's gc.alloc.rate.norm is the allocation per MovieInfo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoviesStreamBenchmark {
+
+    private static final int MOVIE_INFOS = 1000;
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final ResolvableType MOVIE_INFO_TYPE = ResolvableType.forClass(MovieInfo.class);
+
+    private NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private Jackson2JsonDecoder decoder;
+    private Jackson2JsonEncoder encoder;
+    private List<byte[]> chunks;
+
+    @Setup
+    public void setUp() throws Exception {
+        var objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        decoder = new Jackson2JsonDecoder(objectMapper);
+        encoder = new Jackson2JsonEncoder(objectMapper);
+
+        var body = new StringBuilder();
+        for (int i = 0; i < MOVIE_INFOS; i++) {
+            var movieInfo = new MovieInfo(String.valueOf(i), "The Dark Knight " + i, 2008,
+                    List.of("Christian Bale", "Heath Ledger", "Aaron Eckhart"), LocalDate.parse("2008-07-18"));
+            body.append(objectMapper.writeValueAsString(movieInfo)).append('\n');
+        }
+        var bytes = body.toString().getBytes();
+        chunks = new ArrayList<>();
+        for (int start = 0; start < bytes.length; start += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(bytes, start, Math.min(bytes.length, start + CHUNK_SIZE)));
+        }
+    }
+
+    private Flux<DataBuffer> body() {
+        return Flux.fromIterable(chunks)
+                .map(chunk -> bufferFactory.allocateBuffer(chunk.length).write(chunk));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVIE_INFOS)
+    public long decodeAndEncode() {
+        return decoder.decode(body(), MOVIE_INFO_TYPE, MediaType.APPLICATION_NDJSON, Collections.emptyMap())
+                .map(movieInfo -> encoder.encodeValue(movieInfo, bufferFactory, MOVIE_INFO_TYPE,
+                        MediaType.APPLICATION_NDJSON, Collections.emptyMap()))
+                .map(this::write)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVIE_INFOS)
+    public long passthrough() {
+        return NdjsonUtil.splitLines(body(), 256 * 1024)
+                .map(this::write)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    // stands in for the response writer, which releases every buffer once it is sent
+    private long write(DataBuffer buffer) {
+        long written = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return written;
+    }
+}
@@ -0,0 +1,35 @@
+package com.reactivespring.client;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Calls to MoviesInfo Service. restClient.transport selects the implementation:
+ * http (MoviesInfoRestClient, the default) or rsocket (MoviesInfoRSocketClient).
+ */
+public interface MoviesInfoClient {
+
+    Mono<MovieInfo> retrieveMovieInfo(String movieId);
+
+    /**
+     * The MovieInfo as the JSON received from MoviesInfo Service, failing the same
+     * way as retrieveMovieInfo. The subscriber owns the buffer and has to release it.
+     */
+    Mono<DataBuffer> retrieveMovieInfoJson(String movieId);
+
+    Flux<MovieInfo> retrieveMoviesInfoStream();
+
+    /**
+     * The same stream as retrieveMoviesInfoStream, as the JSON received from
+     * MoviesInfo Service with one buffer per MovieInfo, each ending with a newline.
+     * The subscriber owns the buffers and has to release them.
+     */
+    Flux<DataBuffer> retrieveMoviesInfoStreamLines();
+
+    Flux<MovieInfoLookup> retrieveMovieInfos(Collection<String> movieIds);
+}
@@ -0,0 +1,98 @@
+package com.reactivespring.client;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.util.RetryUtil;
+import io.rsocket.exceptions.ApplicationErrorException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * MoviesInfo Service over one multiplexed RSocket connection. Streams use
+ * RSocket's request-n flow control, so demand reaches the server.
+ */
+@Component
+@ConditionalOnProperty(name = "restClient.transport", havingValue = "rsocket")
+public class MoviesInfoRSocketClient implements MoviesInfoClient {
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    private RSocketRequester rSocketRequester;
+
+    public MoviesInfoRSocketClient(@Qualifier("moviesInfoRSocketRequester") RSocketRequester rSocketRequester) {
+        this.rSocketRequester = rSocketRequester;
+    }
+
+    @Override
+    public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+        return rSocketRequester
+                .route("moviesinfo.{id}", movieId)
+                .retrieveMono(MovieInfo.class)
+                .onErrorMap(ApplicationErrorException.class, this::toServerException)
+                // an empty response is how the route reports an unknown id
+                .switchIfEmpty(Mono.error(() -> new MoviesInfoClientException(
+                        "There is no MovieInfo available for the passed in Id: " + movieId,
+                        HttpStatus.NOT_FOUND.value())))
+                .retryWhen(RetryUtil.retrySpec());
+    }
+
+    @Override
+    public Mono<DataBuffer> retrieveMovieInfoJson(String movieId) {
+        return rSocketRequester
+                .route("moviesinfo.{id}", movieId)
+                .retrieveMono(DataBuffer.class)
+                .onErrorMap(ApplicationErrorException.class, this::toServerException)
+                .switchIfEmpty(Mono.error(() -> new MoviesInfoClientException(
+                        "There is no MovieInfo available for the passed in Id: " + movieId,
+                        HttpStatus.NOT_FOUND.value())))
+                .retryWhen(RetryUtil.retrySpec())
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    @Override
+    public Flux<MovieInfo> retrieveMoviesInfoStream() {
+        return rSocketRequester
+                .route("moviesinfo.stream")
+                .retrieveFlux(MovieInfo.class)
+                .onErrorMap(ApplicationErrorException.class, this::toServerException)
+                .retryWhen(RetryUtil.retrySpec());
+    }
+
+    // every payload already holds one MovieInfo as JSON, it only needs its newline
+    @Override
+    public Flux<DataBuffer> retrieveMoviesInfoStreamLines() {
+        return rSocketRequester
+                .route("moviesinfo.stream")
+                .retrieveFlux(DataBuffer.class)
+                .map(json -> json.factory().join(List.of(json, json.factory().wrap(NEWLINE))))
+                .onErrorMap(ApplicationErrorException.class, this::toServerException)
+                .retryWhen(RetryUtil.retrySpec())
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    @Override
+    public Flux<MovieInfoLookup> retrieveMovieInfos(Collection<String> movieIds) {
+        return rSocketRequester
+                .route("moviesinfo.ids")
+                .data(movieIds)
+                .retrieveFlux(MovieInfoLookup.class)
+                .onErrorMap(ApplicationErrorException.class, this::toServerException)
+                .retryWhen(RetryUtil.retrySpec());
+    }
+
+    private Throwable toServerException(ApplicationErrorException ex) {
+        return new MoviesInfoServerException("Server exception in MoviesInfo Service: " + ex.getMessage());
+    }
+}
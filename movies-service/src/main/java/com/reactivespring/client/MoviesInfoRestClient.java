@@ -2,12 +2,19 @@ package com.reactivespring.client;
 
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.util.NdjsonUtil;
 import com.reactivespring.util.RetryUtil;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
@@ -15,20 +22,44 @@ import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.Collection;
 
 @Component
-public class MoviesInfoRestClient {
+@ConditionalOnProperty(name = "restClient.transport", havingValue = "http", matchIfMissing = true)
+public class MoviesInfoRestClient implements MoviesInfoClient {
 
     private WebClient webClient;
 
     @Value("${restClient.moviesInfoUrl}")
     private String moviesInfoUrl;
 
+    // the limit the codecs apply to a single decoded MovieInfo, and to a body joined undecoded
+    @Value("${spring.codec.max-in-memory-size:256KB}")
+    private DataSize maxInMemorySize;
+
     public MoviesInfoRestClient(WebClient webClient) {
         this.webClient = webClient;
     }
 
+    @Override
     public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+        return retrieveMovieInfoResponse(movieId)
+                .bodyToMono(MovieInfo.class)
+//                .retry(3)
+                .retryWhen(RetryUtil.retrySpec())
+                .log();
+    }
+
+    // the body as received, joined into one buffer but not decoded; a larger body than the codecs take fails
+    @Override
+    public Mono<DataBuffer> retrieveMovieInfoJson(String movieId) {
+        return DataBufferUtils.join(retrieveMovieInfoResponse(movieId).bodyToFlux(DataBuffer.class),
+                        (int) maxInMemorySize.toBytes())
+                .retryWhen(RetryUtil.retrySpec())
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private WebClient.ResponseSpec retrieveMovieInfoResponse(String movieId) {
         var url = moviesInfoUrl.concat("/{id}");
 //        var retrySpec = Retry
 //                .fixedDelay(3, Duration.ofSeconds(1))
@@ -63,13 +94,10 @@ public class MoviesInfoRestClient {
                 .onStatus(HttpStatus::is5xxServerError, clientResponse -> clientResponse.bodyToMono(String.class)
                         .flatMap(responseMessage -> Mono.error(
                                 new MoviesInfoServerException("Server exception in MoviesInfo Service: " + responseMessage)
-                        )))
-                .bodyToMono(MovieInfo.class)
-//                .retry(3)
-                .retryWhen(RetryUtil.retrySpec())
-                .log();
+                        )));
     }
 
+    @Override
     public Flux<MovieInfo> retrieveMoviesInfoStream() {
         var url = moviesInfoUrl.concat("/stream");
 
@@ -89,4 +117,53 @@ public class MoviesInfoRestClient {
                 .retryWhen(RetryUtil.retrySpec())
                 .log();
     }
+
+    // NDJSON straight from the response body, framed on newlines but never decoded
+    @Override
+    public Flux<DataBuffer> retrieveMoviesInfoStreamLines() {
+        var url = moviesInfoUrl.concat("/stream");
+
+        return webClient
+                .get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(
+                                new MoviesInfoClientException(responseMessage, clientResponse.statusCode().value())
+                        )))
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(
+                                new MoviesInfoServerException("Server exception in MoviesInfo Service: " + responseMessage)
+                        )))
+                .bodyToFlux(DataBuffer.class)
+                .transform(body -> NdjsonUtil.splitLines(body, (int) maxInMemorySize.toBytes()))
+                .retryWhen(RetryUtil.retrySpec())
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * Fetches many MovieInfos in one call. Entries come back in the order of movieIds,
+     * with found = false for ids that MoviesInfo Service does not know.
+     */
+    @Override
+    public Flux<MovieInfoLookup> retrieveMovieInfos(Collection<String> movieIds) {
+        var url = moviesInfoUrl.concat("/ids");
+
+        return webClient
+                .post()
+                .uri(url)
+                .bodyValue(movieIds)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(
+                                new MoviesInfoClientException(responseMessage, clientResponse.statusCode().value())
+                        )))
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(
+                                new MoviesInfoServerException("Server exception in MoviesInfo Service: " + responseMessage)
+                        )))
+                .bodyToFlux(MovieInfoLookup.class)
+                .retryWhen(RetryUtil.retrySpec());
+    }
 }
@@ -0,0 +1,28 @@
+package com.reactivespring.client;
+
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Calls to Reviews Service. restClient.transport selects the implementation:
+ * http (ReviewsRestClient, the default) or rsocket (ReviewsRSocketClient).
+ */
+public interface ReviewsClient {
+
+    Flux<Review> retrieveReviews(String movieId);
+
+    /**
+     * The movie's reviews as one JSON array, built from what Reviews Service sent
+     * without decoding it. Empty where retrieveReviews would return no reviews.
+     * The subscriber owns the buffer and has to release it.
+     */
+    Mono<DataBuffer> retrieveReviewsJson(String movieId);
+
+    // one MovieReviews per movie that has reviews, in ascending movie id order
+    Flux<MovieReviews> retrieveReviews(Collection<String> movieIds);
+}
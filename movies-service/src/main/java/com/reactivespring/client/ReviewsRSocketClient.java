@@ -0,0 +1,64 @@
+package com.reactivespring.client;
+
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.MovieJsonUtil;
+import com.reactivespring.util.RetryUtil;
+import io.rsocket.exceptions.ApplicationErrorException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+@Component
+@ConditionalOnProperty(name = "restClient.transport", havingValue = "rsocket")
+public class ReviewsRSocketClient implements ReviewsClient {
+
+    private RSocketRequester rSocketRequester;
+
+    public ReviewsRSocketClient(@Qualifier("reviewsRSocketRequester") RSocketRequester rSocketRequester) {
+        this.rSocketRequester = rSocketRequester;
+    }
+
+    @Override
+    public Flux<Review> retrieveReviews(String movieId) {
+        return rSocketRequester
+                .route("reviews.movie.{movieInfoId}", movieId)
+                .retrieveFlux(Review.class)
+                .onErrorMap(ApplicationErrorException.class, ex ->
+                        new ReviewsServerException("Server exception in Reviews Service: " + ex.getMessage()))
+                .retryWhen(RetryUtil.retrySpec());
+    }
+
+    // the route streams one review per payload, those are joined into an array as they are
+    @Override
+    public Mono<DataBuffer> retrieveReviewsJson(String movieId) {
+        return rSocketRequester
+                .route("reviews.movie.{movieInfoId}", movieId)
+                .retrieveFlux(DataBuffer.class)
+                .collectList()
+                .flatMap(reviews -> Mono.justOrEmpty(MovieJsonUtil.toJsonArray(reviews)))
+                .onErrorMap(ApplicationErrorException.class, ex ->
+                        new ReviewsServerException("Server exception in Reviews Service: " + ex.getMessage()))
+                .retryWhen(RetryUtil.retrySpec())
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    @Override
+    public Flux<MovieReviews> retrieveReviews(Collection<String> movieIds) {
+        return rSocketRequester
+                .route("reviews.movies")
+                .data(movieIds)
+                .retrieveFlux(MovieReviews.class)
+                .onErrorMap(ApplicationErrorException.class, ex ->
+                        new ReviewsServerException("Server exception in Reviews Service: " + ex.getMessage()))
+                .retryWhen(RetryUtil.retrySpec());
+    }
+}
@@ -1,5 +1,6 @@
 package com.reactivespring.client;
 
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
@@ -7,25 +8,38 @@ import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
 import com.reactivespring.util.RetryUtil;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 @Component
-public class ReviewsRestClient {
+@ConditionalOnProperty(name = "restClient.transport", havingValue = "http", matchIfMissing = true)
+public class ReviewsRestClient implements ReviewsClient {
 
     private WebClient webClient;
 
     @Value("${restClient.reviewsUrl}")
     private String reviewsUrl;
 
+    // the limit the codecs apply to a decoded body, and to a body joined undecoded
+    @Value("${spring.codec.max-in-memory-size:256KB}")
+    private DataSize maxInMemorySize;
+
     public ReviewsRestClient(WebClient webClient) {
         this.webClient = webClient;
     }
 
+    @Override
     public Flux<Review> retrieveReviews(String movieId) {
         var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
                 .queryParam("movieInfoId", movieId)
@@ -53,4 +67,61 @@ public class ReviewsRestClient {
                 .retryWhen(RetryUtil.retrySpec());
     }
 
+    // the array body as received; a 404 body is an error message, not reviews, so it is dropped,
+    // and a larger body than the codecs take fails
+    @Override
+    public Mono<DataBuffer> retrieveReviewsJson(String movieId) {
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .queryParam("movieInfoId", movieId)
+                .buildAndExpand().toUriString();
+
+        return webClient
+                .get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchangeToMono(clientResponse -> {
+                    var statusCode = clientResponse.statusCode();
+                    if (statusCode.equals(HttpStatus.NOT_FOUND)) {
+                        return clientResponse.releaseBody().then(Mono.empty());
+                    }
+                    if (statusCode.is4xxClientError()) {
+                        return clientResponse.bodyToMono(String.class)
+                                .flatMap(responseMessage -> Mono.error(
+                                        new ReviewsClientException(responseMessage)
+                                ));
+                    }
+                    if (statusCode.is5xxServerError()) {
+                        return clientResponse.bodyToMono(String.class)
+                                .flatMap(responseMessage -> Mono.error(
+                                        new ReviewsServerException("Server exception in Reviews Service: " + responseMessage)
+                                ));
+                    }
+                    return DataBufferUtils.join(clientResponse.bodyToFlux(DataBuffer.class), (int) maxInMemorySize.toBytes());
+                })
+                .retryWhen(RetryUtil.retrySpec())
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    // POST, so the id list is not bounded by the length of a query string
+    @Override
+    public Flux<MovieReviews> retrieveReviews(Collection<String> movieIds) {
+        var url = reviewsUrl.concat("/movies");
+
+        return webClient
+                .post()
+                .uri(url)
+                .bodyValue(movieIds)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(
+                                new ReviewsClientException(responseMessage)
+                        )))
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(
+                                new ReviewsServerException("Server exception in Reviews Service: " + responseMessage)
+                        )))
+                .bodyToFlux(MovieReviews.class)
+                .retryWhen(RetryUtil.retrySpec());
+    }
+
 }
@@ -0,0 +1,24 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.nativex.hint.AccessBits;
+import org.springframework.nativex.hint.NativeHint;
+import org.springframework.nativex.hint.ResourceHint;
+import org.springframework.nativex.hint.TypeHint;
+
+/**
+ * Native image hints for what Spring AOT cannot infer: the upstream payloads
+ * decoded by the WebClient and RSocket clients through class literals.
+ */
+@NativeHint(
+        types = @TypeHint(types = {Movie.class, MovieInfo.class, MovieInfoLookup.class, MovieReviews.class, Review.class},
+                access = AccessBits.LOAD_AND_CONSTRUCT | AccessBits.DECLARED_FIELDS | AccessBits.DECLARED_METHODS),
+        resources = @ResourceHint(patterns = "application-.*\\.yml"))
+@Configuration
+public class NativeHintsConfig {
+}
@@ -0,0 +1,34 @@
+package com.reactivespring.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.rsocket.RSocketRequester;
+
+import java.net.URI;
+
+@Configuration
+@ConditionalOnProperty(name = "restClient.transport", havingValue = "rsocket")
+public class RSocketClientConfig {
+
+    @Bean
+    public RSocketRequester moviesInfoRSocketRequester(RSocketRequester.Builder builder,
+                                                       @Value("${rsocketClient.moviesInfoUri}") URI moviesInfoUri) {
+        return connect(builder, moviesInfoUri);
+    }
+
+    @Bean
+    public RSocketRequester reviewsRSocketRequester(RSocketRequester.Builder builder,
+                                                    @Value("${rsocketClient.reviewsUri}") URI reviewsUri) {
+        return connect(builder, reviewsUri);
+    }
+
+    // tcp://host:port or ws://host:port/rsocket; the connection is opened on the first request
+    private RSocketRequester connect(RSocketRequester.Builder builder, URI uri) {
+        if ("ws".equals(uri.getScheme()) || "wss".equals(uri.getScheme())) {
+            return builder.websocket(uri);
+        }
+        return builder.tcp(uri.getHost(), uri.getPort());
+    }
+}
@@ -1,5 +1,6 @@
 package com.reactivespring.config;
 
+import com.reactivespring.metrics.ServerTimingFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -8,8 +9,10 @@ import org.springframework.web.reactive.function.client.WebClient;
 public class WebClientConfig {
 
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClient webClient(WebClient.Builder builder, ServerTimingFilter serverTimingFilter) {
+        return builder
+                .filter(serverTimingFilter)
+                .build();
     }
 
 
@@ -1,43 +1,152 @@
 package com.reactivespring.controller;
 
-import com.reactivespring.client.MoviesInfoRestClient;
-import com.reactivespring.client.ReviewsRestClient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.client.MoviesInfoClient;
+import com.reactivespring.client.ReviewsClient;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.metrics.ServerTiming;
+import com.reactivespring.metrics.ServerTimingMetrics;
+import com.reactivespring.util.MovieJsonUtil;
+import com.reactivespring.warmup.MovieAccessTracker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import reactor.core.publisher.Flux;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/v1/movies")
 public class MoviesController {
 
-    private MoviesInfoRestClient moviesInfoRestClient;
-    private ReviewsRestClient reviewsRestClient;
+    private MoviesInfoClient moviesInfoClient;
+    private ReviewsClient reviewsClient;
+    private ObjectMapper objectMapper;
+    private MovieAccessTracker movieAccessTracker;
+    private ServerTimingMetrics serverTimingMetrics;
+
+    @Value("${moviesStream.passthrough:true}")
+    private boolean streamPassthrough;
+
+    @Value("${moviesComposition.splice:true}")
+    private boolean movieSplicing;
+
+    @Value("${serverTiming.header:true}")
+    private boolean serverTimingHeader;
+
+    public MoviesController(MoviesInfoClient moviesInfoClient, ReviewsClient reviewsClient, ObjectMapper objectMapper,
+                            MovieAccessTracker movieAccessTracker, ServerTimingMetrics serverTimingMetrics) {
+        this.moviesInfoClient = moviesInfoClient;
+        this.reviewsClient = reviewsClient;
+        this.objectMapper = objectMapper;
+        this.movieAccessTracker = movieAccessTracker;
+        this.serverTimingMetrics = serverTimingMetrics;
+    }
+
+    /**
+     * The MovieInfo with its reviews. By default the Movie is spliced together from
+     * the JSON the two services sent, otherwise it is decoded and encoded again.
+     * Every movie found counts towards the movies MovieWarmup prefetches, unknown
+     * and invalid ids do not. The time spent per phase is returned in the
+     * Server-Timing header (serverTiming.header), of error responses too, and
+     * recorded in the movies.request.phase histograms.
+     */
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<DataBuffer>> retrieveMovieById(@PathVariable("id") String movieId,
+                                                              ServerHttpResponse response) {
+        var serverTiming = new ServerTiming();
+        if (serverTimingHeader) {
+            // added when the response is committed rather than with the body, so the
+            // responses GlobalErrorHandler writes for failed lookups have it as well
+            response.beforeCommit(() -> Mono.fromRunnable(() -> {
+                var headerValue = serverTiming.toHeaderValue();
+                if (!headerValue.isEmpty()) {
+                    response.getHeaders().set(ServerTiming.HEADER, headerValue);
+                }
+            }));
+        }
+        var movieJson = movieSplicing
+                ? spliceMovie(movieId, serverTiming)
+                : composeMovie(movieId, serverTiming)
+                        .map(movie -> serverTiming.time(ServerTiming.Phase.COMPOSE, () -> toJson(movie)));
 
-    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
-        this.moviesInfoRestClient = moviesInfoRestClient;
-        this.reviewsRestClient = reviewsRestClient;
+        return movieJson.doOnNext(json -> movieAccessTracker.record(movieId))
+                .map(json -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(json))
+                .doFinally(signalType -> serverTimingMetrics.record(serverTiming))
+                .contextWrite(Context.of(ServerTiming.class, serverTiming));
     }
 
-    @GetMapping("/{id}")
-    public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId) {
-        return moviesInfoRestClient.retrieveMovieInfo(movieId)
+    private Mono<Movie> composeMovie(String movieId, ServerTiming serverTiming) {
+        return serverTiming.time(ServerTiming.Phase.INFO, moviesInfoClient.retrieveMovieInfo(movieId))
                 .flatMap(movieInfo -> {
-                    var reviewsListMono = reviewsRestClient.retrieveReviews(movieId)
-                            .collectList();
+                    var reviewsListMono = serverTiming.time(ServerTiming.Phase.REVIEWS,
+                            reviewsClient.retrieveReviews(movieId).collectList());
 
                     return reviewsListMono.map(reviews -> new Movie(movieInfo, reviews));
                 });
     }
 
+    private Mono<DataBuffer> spliceMovie(String movieId, ServerTiming serverTiming) {
+        return serverTiming.time(ServerTiming.Phase.INFO, moviesInfoClient.retrieveMovieInfoJson(movieId))
+                // the MovieInfo buffer is released if the reviews fail or the request is cancelled,
+                // once the reviews are there the spliced Movie owns it
+                .flatMap(movieInfoJson -> Mono.usingWhen(Mono.just(movieInfoJson),
+                                json -> serverTiming.time(ServerTiming.Phase.REVIEWS, reviewsClient.retrieveReviewsJson(movieId))
+                                        .map(Optional::of)
+                                        .defaultIfEmpty(Optional.empty()),
+                                json -> Mono.empty(),
+                                (json, ex) -> Mono.fromRunnable(() -> DataBufferUtils.release(json)),
+                                json -> Mono.fromRunnable(() -> DataBufferUtils.release(json)))
+                        .map(reviewListJson -> serverTiming.time(ServerTiming.Phase.COMPOSE, () -> MovieJsonUtil.toMovieJson(
+                                objectMapper.getFactory(), movieInfoJson, reviewListJson.orElse(null)))));
+    }
+
+    private DataBuffer toJson(Movie movie) {
+        try {
+            return DefaultDataBufferFactory.sharedInstance.wrap(objectMapper.writeValueAsBytes(movie));
+        } catch (JsonProcessingException ex) {
+            throw Exceptions.propagate(ex);
+        }
+    }
+
+    /**
+     * Relays the MoviesInfo Service stream, flushing every MovieInfo as it arrives.
+     * In passthrough mode the NDJSON lines are forwarded as received, otherwise
+     * each MovieInfo is decoded and encoded again.
+     */
     @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<MovieInfo> retrieveMoviesInfo() {
-        return moviesInfoRestClient.retrieveMoviesInfoStream();
+    public Mono<Void> retrieveMoviesInfo(ServerHttpResponse response) {
+        var lines = streamPassthrough
+                ? moviesInfoClient.retrieveMoviesInfoStreamLines()
+                : moviesInfoClient.retrieveMoviesInfoStream()
+                        .map(movieInfo -> toLine(movieInfo, response.bufferFactory()));
+
+        response.getHeaders().setContentType(MediaType.APPLICATION_NDJSON);
+        return response.writeAndFlushWith(lines.map(Mono::just));
+    }
+
+    private DataBuffer toLine(MovieInfo movieInfo, DataBufferFactory bufferFactory) {
+        try {
+            var json = objectMapper.writeValueAsBytes(movieInfo);
+            return bufferFactory.allocateBuffer(json.length + 1).write(json).write((byte) '\n');
+        } catch (JsonProcessingException ex) {
+            throw Exceptions.propagate(ex);
+        }
     }
 
 }
@@ -0,0 +1,40 @@
+package com.reactivespring.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reports every WebClient exchange made within a ServerTiming phase to that
+ * ServerTiming: each attempt, so retries are timed, and with
+ * serverTiming.propagate the Server-Timing header of the response. Exchanges
+ * outside of a timed request pass straight through.
+ */
+@Component
+public class ServerTimingFilter implements ExchangeFilterFunction {
+
+    @Value("${serverTiming.propagate:true}")
+    private boolean propagate;
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> {
+            var serverTiming = context.getOrDefault(ServerTiming.class, (ServerTiming) null);
+            var phase = context.getOrDefault(ServerTiming.PHASE, (ServerTiming.Phase) null);
+            if (serverTiming == null || phase == null) {
+                return next.exchange(request);
+            }
+
+            serverTiming.attemptStarted(phase);
+            var response = next.exchange(request);
+            return propagate
+                    ? response.doOnNext(clientResponse -> serverTiming.addDownstream(phase,
+                            clientResponse.headers().header(ServerTiming.HEADER)))
+                    : response;
+        });
+    }
+}
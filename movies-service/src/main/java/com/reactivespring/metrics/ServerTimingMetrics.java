@@ -0,0 +1,40 @@
+package com.reactivespring.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * movies.request.phase: latency histograms of GET /v1/movies/{id} by phase, from
+ * the same ServerTiming as the Server-Timing header. The timers are registered
+ * once, so recording a request does not look meters up.
+ */
+@Component
+public class ServerTimingMetrics {
+
+    private Map<ServerTiming.Phase, Timer> phaseTimers = new EnumMap<>(ServerTiming.Phase.class);
+
+    public ServerTimingMetrics(MeterRegistry meterRegistry) {
+        for (var phase : ServerTiming.Phase.values()) {
+            phaseTimers.put(phase, Timer.builder("movies.request.phase")
+                    .description("Time a movie request spent in each phase")
+                    .tags("uri", "/v1/movies/{id}", "phase", phase.metricName())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    // phases the request never reached are left out rather than recorded as zero
+    public void record(ServerTiming serverTiming) {
+        phaseTimers.forEach((phase, timer) -> {
+            var nanos = serverTiming.nanos(phase);
+            if (nanos > 0) {
+                timer.record(nanos, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+}
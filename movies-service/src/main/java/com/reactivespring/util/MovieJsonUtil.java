@@ -0,0 +1,89 @@
+package com.reactivespring.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.ReviewsServerException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MovieJsonUtil {
+
+    private static final byte[] MOVIE_INFO_FIELD = "{\"movieInfo\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REVIEW_LIST_FIELD = ",\"reviewList\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_ARRAY = {'[', ']'};
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] ARRAY_END = {']'};
+    private static final byte[] SEPARATOR = {','};
+    private static final byte[] OBJECT_END = {'}'};
+
+    /**
+     * Splices a Movie, {"movieInfo":...,"reviewList":[...]}, from the MovieInfo and
+     * reviews as the services sent them. The bodies are neither decoded nor copied:
+     * the result is a composite of them and the envelope, where the buffer factory
+     * supports it. Only the first token of each body is parsed, to make sure an
+     * object and an array are spliced in. A null reviewListJson stands for no reviews.
+     * The result takes over both buffers, which are released if splicing fails.
+     */
+    public static DataBuffer toMovieJson(JsonFactory jsonFactory, DataBuffer movieInfoJson, DataBuffer reviewListJson) {
+        try {
+            if (!startsWith(jsonFactory, movieInfoJson, JsonToken.START_OBJECT)) {
+                throw new MoviesInfoServerException("Server exception in MoviesInfo Service: MovieInfo is not a JSON object");
+            }
+            if (reviewListJson != null && !startsWith(jsonFactory, reviewListJson, JsonToken.START_ARRAY)) {
+                throw new ReviewsServerException("Server exception in Reviews Service: reviews are not a JSON array");
+            }
+        } catch (RuntimeException ex) {
+            DataBufferUtils.release(movieInfoJson);
+            if (reviewListJson != null) {
+                DataBufferUtils.release(reviewListJson);
+            }
+            throw ex;
+        }
+
+        var bufferFactory = movieInfoJson.factory();
+        return bufferFactory.join(List.of(
+                bufferFactory.wrap(MOVIE_INFO_FIELD),
+                movieInfoJson,
+                bufferFactory.wrap(REVIEW_LIST_FIELD),
+                reviewListJson != null ? reviewListJson : bufferFactory.wrap(EMPTY_ARRAY),
+                bufferFactory.wrap(OBJECT_END)));
+    }
+
+    /**
+     * Joins JSON values, one per buffer, into a JSON array without copying them.
+     * Null when there are none, the way a missing review list is passed to toMovieJson.
+     */
+    public static DataBuffer toJsonArray(List<DataBuffer> elements) {
+        if (elements.isEmpty()) {
+            return null;
+        }
+        DataBufferFactory bufferFactory = elements.get(0).factory();
+        var parts = new ArrayList<DataBuffer>(elements.size() * 2 + 1);
+        parts.add(bufferFactory.wrap(ARRAY_START));
+        for (var element : elements) {
+            if (parts.size() > 1) {
+                parts.add(bufferFactory.wrap(SEPARATOR));
+            }
+            parts.add(element);
+        }
+        parts.add(bufferFactory.wrap(ARRAY_END));
+        return bufferFactory.join(parts);
+    }
+
+    // reads a slice, so the buffer's own read position stays where it is
+    private static boolean startsWith(JsonFactory jsonFactory, DataBuffer json, JsonToken expected) {
+        var slice = json.slice(json.readPosition(), json.readableByteCount());
+        try (var parser = jsonFactory.createParser(slice.asInputStream())) {
+            return parser.nextToken() == expected;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+}
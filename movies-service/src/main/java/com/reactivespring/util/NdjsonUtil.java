@@ -0,0 +1,115 @@
+package com.reactivespring.util;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class NdjsonUtil {
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    /**
+     * Re-frames an NDJSON body into one buffer per line, newline included, without
+     * decoding it. Lines are slices of the received buffers, and a line split across
+     * buffers is joined as a composite where the buffer factory supports it, so the
+     * bytes are not copied. Blank lines are dropped, and a last line without a
+     * newline gets one. A line longer than maxLineSize bytes, newline excluded, fails
+     * the Flux with a DataBufferLimitException. Buffers still held when the
+     * subscriber cancels or the body fails are released.
+     */
+    public static Flux<DataBuffer> splitLines(Flux<DataBuffer> body, int maxLineSize) {
+        return Flux.defer(() -> {
+            var matcher = DataBufferUtils.matcher(NEWLINE);
+            // the start of a line whose newline has not arrived yet
+            var pending = new ArrayList<DataBuffer>();
+            return body
+                    .concatMapIterable(buffer -> split(buffer, matcher, pending, maxLineSize))
+                    .concatWith(Mono.fromSupplier(() -> terminateLastLine(pending)))
+                    .doFinally(signalType -> releasePending(pending))
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        });
+    }
+
+    private static List<DataBuffer> split(DataBuffer buffer, DataBufferUtils.Matcher matcher,
+                                          List<DataBuffer> pending, int maxLineSize) {
+        // a cancel can release pending from another thread
+        synchronized (pending) {
+            List<DataBuffer> lines = null;
+            try {
+                while (buffer.readableByteCount() > 0) {
+                    var end = matcher.match(buffer);
+                    if (end == -1) {
+                        pending.add(DataBufferUtils.retain(buffer));
+                        // fails early on a line that never ends, pending is released with the Flux
+                        checkLineSize(pending.stream().mapToInt(DataBuffer::readableByteCount).sum(), maxLineSize);
+                        break;
+                    }
+                    var start = buffer.readPosition();
+                    var line = buffer.retainedSlice(start, end - start + 1);
+                    buffer.readPosition(end + 1);
+                    if (!pending.isEmpty()) {
+                        pending.add(line);
+                        line = joinPending(pending);
+                    } else if (line.readableByteCount() == NEWLINE.length) {
+                        DataBufferUtils.release(line);
+                        continue;
+                    }
+                    lines = lines == null ? new ArrayList<>() : lines;
+                    lines.add(line);
+                    checkLineSize(line.readableByteCount() - NEWLINE.length, maxLineSize);
+                }
+                return lines == null ? Collections.emptyList() : lines;
+            } catch (RuntimeException ex) {
+                // the lines split off so far never reach the subscriber
+                if (lines != null) {
+                    lines.forEach(DataBufferUtils::release);
+                }
+                throw ex;
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+
+    private static void checkLineSize(int lineSize, int maxLineSize) {
+        if (lineSize > maxLineSize) {
+            throw new DataBufferLimitException("NDJSON line exceeds the limit of " + maxLineSize + " bytes");
+        }
+    }
+
+    // a body that does not end with a newline still ends with a complete line
+    private static DataBuffer terminateLastLine(List<DataBuffer> pending) {
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return null;
+            }
+            pending.add(pending.get(0).factory().allocateBuffer(NEWLINE.length).write(NEWLINE));
+            return joinPending(pending);
+        }
+    }
+
+    private static DataBuffer joinPending(List<DataBuffer> pending) {
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return null;
+            }
+            // the joined buffer takes over the pending buffers and releases them itself
+            var joined = pending.get(0).factory().join(pending);
+            pending.clear();
+            return joined;
+        }
+    }
+
+    private static void releasePending(List<DataBuffer> pending) {
+        synchronized (pending) {
+            pending.forEach(DataBufferUtils::release);
+            pending.clear();
+        }
+    }
+}
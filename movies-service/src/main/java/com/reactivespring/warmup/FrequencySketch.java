@@ -0,0 +1,83 @@
+package com.reactivespring.warmup;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch of how often keys are seen, in a fixed amount of memory.
+ * Each key increments one counter in each of four rows and its frequency is the
+ * smallest of them, so collisions only ever overestimate. Once sampleSize keys
+ * have been counted every counter is halved, so the estimates follow recent
+ * traffic rather than all traffic since startup. Increments from concurrent
+ * callers are atomic per counter; a halving racing them can lose a few counts,
+ * which is within the error of the sketch anyway.
+ */
+public class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final AtomicIntegerArray counters;
+    private final int rowMask;
+    private final int sampleSize;
+    private final AtomicInteger sampled = new AtomicInteger();
+
+    /**
+     * width counters per row, rounded up to a power of two. sampleSize is the
+     * number of increments after which all counters are halved.
+     */
+    public FrequencySketch(int width, int sampleSize) {
+        var rowWidth = Integer.highestOneBit(Math.max(16, width));
+        if (rowWidth < width) {
+            rowWidth <<= 1;
+        }
+        this.counters = new AtomicIntegerArray(ROWS * rowWidth);
+        this.rowMask = rowWidth - 1;
+        this.sampleSize = sampleSize;
+    }
+
+    // counts the key and returns its new estimated frequency
+    public int increment(Object key) {
+        var hash = spread(key.hashCode());
+        var frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, counters.incrementAndGet(index(hash, row)));
+        }
+        if (sampled.incrementAndGet() >= sampleSize) {
+            age();
+        }
+        return frequency;
+    }
+
+    public int frequency(Object key) {
+        var hash = spread(key.hashCode());
+        var frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, counters.get(index(hash, row)));
+        }
+        return frequency;
+    }
+
+    private void age() {
+        // only the caller that resets the sample halves the counters
+        var current = sampled.get();
+        if (current < sampleSize || !sampled.compareAndSet(current, 0)) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, counter -> counter >>> 1);
+        }
+    }
+
+    private int index(int hash, int row) {
+        var rowHash = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+        rowHash ^= rowHash >>> 15;
+        return row * (rowMask + 1) + (rowHash & rowMask);
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45D9F3B;
+        return hash ^ (hash >>> 16);
+    }
+}
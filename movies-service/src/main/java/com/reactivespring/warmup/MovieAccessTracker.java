@@ -0,0 +1,160 @@
+package com.reactivespring.warmup;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks which movies are requested most, so MovieWarmup knows what to prefetch.
+ * Frequencies come from a FrequencySketch. The sketch cannot list its keys, so
+ * the ids that were frequent when last seen are kept as candidates, up to four
+ * times moviesWarmup.hottest of them; once there are twice that many the least
+ * frequent are dropped and a new id has to beat the weakest survivor to get in.
+ * The hottest ids are written to moviesWarmup.snapshot-file every
+ * moviesWarmup.snapshot-interval and on shutdown, for the next start to warm up
+ * with.
+ */
+@Component
+@Slf4j
+public class MovieAccessTracker {
+
+    private FrequencySketch frequencySketch;
+    private Map<String, Integer> candidates = new ConcurrentHashMap<>();
+    private AtomicBoolean trimming = new AtomicBoolean();
+    // the frequency a new id needs to become a candidate once the candidates are full
+    private volatile int admissionFrequency;
+
+    private int hottest;
+    private int maxCandidates;
+    private Path snapshotFile;
+    private Duration snapshotInterval;
+    private Disposable snapshots;
+
+    public MovieAccessTracker(@Value("${moviesWarmup.hottest:1000}") int hottest,
+                              @Value("${moviesWarmup.sketch-width:65536}") int sketchWidth,
+                              @Value("${moviesWarmup.snapshot-file:${java.io.tmpdir}/movies-service/hot-movies.txt}") String snapshotFile,
+                              @Value("${moviesWarmup.snapshot-interval:1m}") Duration snapshotInterval,
+                              MeterRegistry meterRegistry) {
+        this.hottest = hottest;
+        this.maxCandidates = hottest * 4;
+        // counters are halved every ten increments per counter, so old popularity fades
+        this.frequencySketch = new FrequencySketch(sketchWidth, sketchWidth * 10);
+        this.snapshotFile = Paths.get(snapshotFile);
+        this.snapshotInterval = snapshotInterval;
+
+        Gauge.builder("movies.warmup.candidates", candidates, Map::size)
+                .description("Movie ids tracked as candidates for the warm-up")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        snapshots = Flux.interval(snapshotInterval, snapshotInterval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .subscribe(tick -> saveSnapshot());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (snapshots != null) {
+            snapshots.dispose();
+        }
+        saveSnapshot();
+    }
+
+    public void record(String movieId) {
+        var frequency = frequencySketch.increment(movieId);
+        if (candidates.size() < maxCandidates || frequency > admissionFrequency || candidates.containsKey(movieId)) {
+            candidates.put(movieId, frequency);
+            if (candidates.size() > maxCandidates * 2) {
+                trim();
+            }
+        }
+    }
+
+    // the most requested movie ids, most requested first
+    public List<String> hottest(int limit) {
+        return candidates.keySet().stream()
+                .map(movieId -> Map.entry(movieId, frequencySketch.frequency(movieId)))
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    // the ids of the last snapshot, most requested first, or none if there is no readable snapshot
+    public List<String> loadSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return Collections.emptyList();
+        }
+        try {
+            return Files.readAllLines(snapshotFile, StandardCharsets.UTF_8).stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .limit(hottest)
+                    .collect(Collectors.toList());
+        } catch (IOException ex) {
+            log.warn("Hot movies snapshot {} could not be read : {}", snapshotFile, ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    void saveSnapshot() {
+        var movieIds = hottest(hottest);
+        if (movieIds.isEmpty()) {
+            // nothing was requested since startup, the previous snapshot is still the best guess
+            return;
+        }
+        try {
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            var tempFile = Files.createTempFile(snapshotFile.toAbsolutePath().getParent(), "hot-movies", ".tmp");
+            Files.write(tempFile, movieIds, StandardCharsets.UTF_8);
+            // readers see the old or the new snapshot, never half of one
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.warn("Hot movies snapshot {} could not be written : {}", snapshotFile, ex.getMessage());
+        }
+    }
+
+    private void trim() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            var kept = candidates.keySet().stream()
+                    .map(movieId -> Map.entry(movieId, frequencySketch.frequency(movieId)))
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .limit(maxCandidates)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            candidates.keySet().retainAll(kept.keySet());
+            admissionFrequency = kept.values().stream()
+                    .min(Comparator.naturalOrder())
+                    .orElse(0);
+        } finally {
+            trimming.set(false);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.reactivespring.warmup;
+
+import com.reactivespring.client.MoviesInfoClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Prefetches the most requested movies, so their first requests after a deploy
+ * find the MoviesInfo Service caches warm. At startup the ids of the last
+ * MovieAccessTracker snapshot are requested before the application reports
+ * ready: Boot runs ApplicationRunners before the readiness state changes to
+ * ACCEPTING_TRAFFIC, for at most moviesWarmup.startup-timeout. After that the
+ * hottest ids are requested again every moviesWarmup.refresh-interval, ahead
+ * of the caches expiring them. Prefetching is limited to moviesWarmup.rate
+ * requests per second, moviesWarmup.concurrency at a time, so it never
+ * competes with real traffic; failed prefetches are counted and skipped.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "moviesWarmup.enabled", havingValue = "true", matchIfMissing = true)
+public class MovieWarmup implements ApplicationRunner {
+
+    private MoviesInfoClient moviesInfoClient;
+    private MovieAccessTracker movieAccessTracker;
+    private MeterRegistry meterRegistry;
+
+    @Value("${moviesWarmup.hottest:1000}")
+    private int hottest;
+
+    @Value("${moviesWarmup.concurrency:4}")
+    private int concurrency;
+
+    @Value("${moviesWarmup.startup-timeout:30s}")
+    private Duration startupTimeout;
+
+    @Value("${moviesWarmup.refresh-interval:5m}")
+    private Duration refreshInterval;
+
+    // between two prefetch requests, from moviesWarmup.rate
+    private Duration prefetchInterval;
+
+    private Disposable refreshes;
+
+    public MovieWarmup(MoviesInfoClient moviesInfoClient, MovieAccessTracker movieAccessTracker, MeterRegistry meterRegistry,
+                       @Value("${moviesWarmup.rate:50}") int rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("moviesWarmup.rate must be at least 1 request per second, was " + rate);
+        }
+        this.moviesInfoClient = moviesInfoClient;
+        this.movieAccessTracker = movieAccessTracker;
+        this.meterRegistry = meterRegistry;
+        this.prefetchInterval = Duration.ofSeconds(1).dividedBy(rate);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        var movieIds = movieAccessTracker.loadSnapshot();
+        if (!movieIds.isEmpty()) {
+            var warmed = prefetch(movieIds)
+                    .take(startupTimeout)
+                    .count()
+                    .block();
+            log.info("Warmed up {} of {} movies", warmed, movieIds.size());
+        }
+
+        refreshes = Flux.interval(refreshInterval, refreshInterval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                // a refresh still running when the next one is due is left to finish
+                .concatMap(tick -> prefetch(movieAccessTracker.hottest(hottest)).then(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshes != null) {
+            refreshes.dispose();
+        }
+    }
+
+    // emits the ids that were prefetched
+    private Flux<String> prefetch(List<String> movieIds) {
+        return Flux.fromIterable(movieIds)
+                .delayElements(prefetchInterval)
+                .flatMap(movieId -> moviesInfoClient.retrieveMovieInfoJson(movieId)
+                        // only the MoviesInfo Service caches are warmed, the JSON itself is not needed
+                        .doOnNext(DataBufferUtils::release)
+                        .then(Mono.just(movieId))
+                        .doOnNext(id -> meterRegistry.counter("movies.warmup.prefetched", "result", "success").increment())
+                        .onErrorResume(ex -> {
+                            log.debug("Prefetching movie {} failed : {}", movieId, ex.getMessage());
+                            meterRegistry.counter("movies.warmup.prefetched", "result", "error").increment();
+                            return Mono.empty();
+                        }), concurrency);
+    }
+}
@@ -0,0 +1,193 @@
+package com.reactivespring.client;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MoviesInfoRSocketClient and ReviewsRSocketClient against an RSocket server over
+ * TCP that answers the routes of MoviesInfo Service and Reviews Service with
+ * fixed data.
+ */
+class RSocketClientsIntgTest {
+
+    static CloseableChannel server;
+    static RSocketRequester rSocketRequester;
+    static MoviesInfoRSocketClient moviesInfoClient;
+    static ReviewsRSocketClient reviewsClient;
+
+    @BeforeAll
+    static void startServer() {
+        var objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        var strategies = RSocketStrategies.builder()
+                .encoders(encoders -> encoders.add(new Jackson2JsonEncoder(objectMapper)))
+                .decoders(decoders -> decoders.add(new Jackson2JsonDecoder(objectMapper)))
+                .build();
+        var messageHandler = new RSocketMessageHandler();
+        messageHandler.setRSocketStrategies(strategies);
+        messageHandler.setHandlers(List.of(new StubRoutes()));
+        messageHandler.afterPropertiesSet();
+        server = RSocketServer.create(messageHandler.responder())
+                .bind(TcpServerTransport.create("localhost", 0))
+                .block();
+
+        rSocketRequester = RSocketRequester.builder()
+                .rsocketStrategies(strategies)
+                .tcp("localhost", server.address().getPort());
+        moviesInfoClient = new MoviesInfoRSocketClient(rSocketRequester);
+        reviewsClient = new ReviewsRSocketClient(rSocketRequester);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        rSocketRequester.dispose();
+        server.dispose();
+    }
+
+    @Test
+    void retrieveMovieInfo() {
+        StepVerifier.create(moviesInfoClient.retrieveMovieInfo("abc"))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+    }
+
+    @Test
+    void retrieveMovieInfo_notFound() {
+        StepVerifier.create(moviesInfoClient.retrieveMovieInfo("xyz"))
+                .expectErrorSatisfies(ex -> {
+                    assertTrue(ex instanceof MoviesInfoClientException);
+                    assertEquals(404, ((MoviesInfoClientException) ex).getStatusCode().intValue());
+                })
+                .verify();
+    }
+
+    @Test
+    void retrieveMovieInfoJson() {
+        StepVerifier.create(moviesInfoClient.retrieveMovieInfoJson("abc").map(RSocketClientsIntgTest::text))
+                .assertNext(json -> assertTrue(json.contains("\"name\":\"Batman Begins\"")))
+                .verifyComplete();
+    }
+
+    @Test
+    void retrieveMoviesInfoStreamLines() {
+        var lines = moviesInfoClient.retrieveMoviesInfoStreamLines()
+                .map(RSocketClientsIntgTest::text)
+                .collectList()
+                .block();
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.startsWith("{") && line.endsWith("}\n")));
+    }
+
+    @Test
+    void retrieveMovieInfos() {
+        var lookups = moviesInfoClient.retrieveMovieInfos(List.of("abc", "xyz")).collectList().block();
+
+        assertEquals(List.of("abc", "xyz"), lookups.stream().map(MovieInfoLookup::getMovieInfoId).collect(Collectors.toList()));
+        assertTrue(lookups.get(0).isFound());
+        assertFalse(lookups.get(1).isFound());
+    }
+
+    @Test
+    void retrieveReviews() {
+        StepVerifier.create(reviewsClient.retrieveReviews("1"))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void retrieveReviewsJson() {
+        var json = reviewsClient.retrieveReviewsJson("1").map(RSocketClientsIntgTest::text).block();
+
+        assertTrue(json.startsWith("[{") && json.endsWith("}]"));
+        assertEquals(2, json.split("\"reviewId\"").length - 1);
+    }
+
+    @Test
+    void retrieveReviews_forMovies() {
+        StepVerifier.create(reviewsClient.retrieveReviews(List.of("1", "2")))
+                .assertNext(movieReviews -> {
+                    assertEquals(1L, movieReviews.getMovieInfoId());
+                    assertEquals(2, movieReviews.getReviews().size());
+                })
+                .verifyComplete();
+    }
+
+    private static String text(DataBuffer dataBuffer) {
+        var text = dataBuffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(dataBuffer);
+        return text;
+    }
+
+    @Controller
+    static class StubRoutes {
+
+        private static final MovieInfo MOVIE_INFO = new MovieInfo("abc", "Batman Begins", 2005,
+                List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        private static final List<Review> REVIEWS = List.of(
+                new Review("r1", 1L, "Awesome Movie", 9.0),
+                new Review("r2", 1L, "Excellent Movie", 8.0));
+
+        @MessageMapping("moviesinfo.{id}")
+        Mono<MovieInfo> movieInfo(@DestinationVariable String id) {
+            return "abc".equals(id) ? Mono.just(MOVIE_INFO) : Mono.empty();
+        }
+
+        @MessageMapping("moviesinfo.stream")
+        Flux<MovieInfo> movieInfoStream() {
+            return Flux.just(MOVIE_INFO, MOVIE_INFO);
+        }
+
+        @MessageMapping("moviesinfo.ids")
+        Flux<MovieInfoLookup> movieInfos(List<String> movieInfoIds) {
+            return Flux.fromIterable(movieInfoIds)
+                    .map(id -> "abc".equals(id) ? new MovieInfoLookup(id, true, MOVIE_INFO) : new MovieInfoLookup(id, false, null));
+        }
+
+        @MessageMapping("reviews.movie.{movieInfoId}")
+        Flux<Review> reviews(@DestinationVariable Long movieInfoId) {
+            return Flux.fromIterable(REVIEWS).filter(review -> review.getMovieInfoId().equals(movieInfoId));
+        }
+
+        // movies without reviews are left out, as Reviews Service does
+        @MessageMapping("reviews.movies")
+        Flux<MovieReviews> reviewsForMovies(List<Long> movieInfoIds) {
+            return Flux.fromIterable(movieInfoIds)
+                    .map(movieInfoId -> new MovieReviews(movieInfoId, REVIEWS.stream()
+                            .filter(review -> review.getMovieInfoId().equals(movieInfoId))
+                            .collect(Collectors.toList())))
+                    .filter(movieReviews -> !movieReviews.getReviews().isEmpty());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.reactivespring.controller;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.warmup.MovieAccessTracker;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
@@ -14,7 +15,10 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import java.util.Objects;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test") // cannot use any of created profiles
@@ -23,7 +27,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 @TestPropertySource(
         properties = {
                 "restClient.moviesInfoUrl=http://localhost:8084/v1/moviesinfo",
-                "restClient.reviewsUrl=http://localhost:8084/v1/reviews"
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "moviesWarmup.enabled=false"
         }
 )
 public class MoviesControllerIntgTest {
@@ -31,6 +36,9 @@ public class MoviesControllerIntgTest {
         @Autowired
         WebTestClient webTestClient;
 
+        @Autowired
+        MovieAccessTracker movieAccessTracker;
+
         @Test
         void retrieveMovieById() {
                 var movieId = "abc";
@@ -54,6 +62,11 @@ public class MoviesControllerIntgTest {
                         .uri("/v1/movies/{id}", movieId)
                         .exchange()
                         .expectStatus().isOk()
+                        .expectHeader().value("Server-Timing", serverTiming -> {
+                                assertTrue(serverTiming.contains("info;dur="));
+                                assertTrue(serverTiming.contains("reviews;dur="));
+                                assertTrue(serverTiming.contains("compose;dur="));
+                        })
                         .expectBody(Movie.class)
                         .consumeWith(movieEntityExchangeResult -> {
                                 var movie = movieEntityExchangeResult.getResponseBody();
@@ -62,6 +75,50 @@ public class MoviesControllerIntgTest {
                         });
         }
 
+        @Test
+        void retrieveMovieById_serverTiming_retryAndDownstream() {
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/moviesinfo" + "/" + movieId))
+                        .inScenario("retry")
+                        .whenScenarioStateIs(STARTED)
+                        .willReturn(
+                                aResponse()
+                                        .withStatus(500)
+                                        .withBody("MoviesInfo Service Unavailable")
+                        )
+                        .willSetStateTo("recovered")
+                );
+                stubFor(get(urlEqualTo("/v1/moviesinfo" + "/" + movieId))
+                        .inScenario("retry")
+                        .whenScenarioStateIs("recovered")
+                        .willReturn(
+                                aResponse()
+                                        .withHeader("Content-Type", "application/json")
+                                        .withHeader("Server-Timing", "cache;desc=\"hit\"")
+                                        .withBodyFile("movieinfo.json")
+                        )
+                );
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(
+                                aResponse()
+                                        .withHeader("Content-Type", "application/json")
+                                        .withHeader("Server-Timing", "db;dur=2")
+                                        .withBodyFile("reviews.json")
+                        )
+                );
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus().isOk()
+                        .expectHeader().value("Server-Timing", serverTiming -> {
+                                assertTrue(serverTiming.contains(";desc=\"1 Retried attempts\""));
+                                assertTrue(serverTiming.contains("info-cache;desc=\"hit\""));
+                                assertTrue(serverTiming.contains("reviews-db;dur=2"));
+                        });
+        }
+
         @Test
         void retrieveMovieById_404() {
                 var movieId = "abc";
@@ -84,10 +141,30 @@ public class MoviesControllerIntgTest {
                         .exchange()
                         .expectStatus()
                         .is4xxClientError()
+                        .expectHeader().value("Server-Timing", serverTiming -> assertTrue(serverTiming.contains("info;dur=")))
                         .expectBody(String.class)
                         .isEqualTo("There is no MovieInfo available for the passed in Id: abc");
         }
 
+        @Test
+        void retrieveMovieById_404_notTracked() {
+                var movieId = "no-such-movie";
+                stubFor(get(urlEqualTo("/v1/moviesinfo" + "/" + movieId))
+                        .willReturn(
+                                aResponse().withStatus(404)
+                        )
+                );
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus().is4xxClientError();
+
+                // ids that do not exist must not crowd out real movies in the warm-up
+                assertFalse(movieAccessTracker.hottest(Integer.MAX_VALUE).contains(movieId));
+        }
+
         @Test
         void retrieveMovieById_reviews_404() {
                 var movieId = "abc";
@@ -137,6 +214,10 @@ public class MoviesControllerIntgTest {
                         .exchange()
                         .expectStatus()
                         .is5xxServerError()
+                        .expectHeader().value("Server-Timing", serverTiming -> {
+                                assertTrue(serverTiming.contains("info;dur="));
+                                assertTrue(serverTiming.contains(";desc=\"3 Retried attempts\""));
+                        })
                         .expectBody(String.class)
                         .isEqualTo("Server exception in MoviesInfo Service: MoviesInfo Service Unavailable");
 
@@ -178,4 +259,29 @@ public class MoviesControllerIntgTest {
                 verify(4, getRequestedFor(urlPathMatching("/v1/reviews*")));
         }
 
+        @Test
+        void retrieveMoviesInfo_stream() {
+                var ndjson = "{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005}\n"
+                        + "\n"
+                        + "{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008}";
+                stubFor(get(urlEqualTo("/v1/moviesinfo/stream"))
+                        .willReturn(
+                                aResponse()
+                                        .withHeader("Content-Type", "application/x-ndjson")
+                                        .withBody(ndjson)
+                        )
+                );
+
+                // the lines are forwarded byte for byte, minus the blank one, each with its newline
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/stream")
+                        .exchange()
+                        .expectStatus().isOk()
+                        .expectHeader().contentType("application/x-ndjson")
+                        .expectBody(String.class)
+                        .isEqualTo("{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005}\n"
+                                + "{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008}\n");
+        }
+
 }
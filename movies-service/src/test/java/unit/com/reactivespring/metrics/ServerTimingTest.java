@@ -0,0 +1,65 @@
+package com.reactivespring.metrics;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTimingTest {
+
+    @Test
+    void headerListsThePhasesThatTookTime() {
+        var serverTiming = new ServerTiming();
+        serverTiming.record(ServerTiming.Phase.INFO, TimeUnit.MICROSECONDS.toNanos(12_345));
+        serverTiming.record(ServerTiming.Phase.COMPOSE, TimeUnit.MICROSECONDS.toNanos(250));
+
+        assertEquals("info;dur=12.35;desc=\"MoviesInfo Service\", compose;dur=0.25;desc=\"Movie composition\"",
+                serverTiming.toHeaderValue());
+    }
+
+    @Test
+    void timesAMonoAndTagsItsContextWithThePhase() {
+        var serverTiming = new ServerTiming();
+
+        var phase = serverTiming.time(ServerTiming.Phase.REVIEWS,
+                Mono.deferContextual(context -> Mono.just(context.get(ServerTiming.PHASE)))
+                        .delayElement(Duration.ofMillis(20)));
+
+        StepVerifier.create(phase)
+                .expectNext(ServerTiming.Phase.REVIEWS)
+                .verifyComplete();
+        assertTrue(serverTiming.nanos(ServerTiming.Phase.REVIEWS) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(0, serverTiming.nanos(ServerTiming.Phase.INFO));
+    }
+
+    @Test
+    void everyAttemptAfterTheFirstIsARetry() throws Exception {
+        var serverTiming = new ServerTiming();
+
+        serverTiming.attemptStarted(ServerTiming.Phase.INFO);
+        serverTiming.attemptStarted(ServerTiming.Phase.REVIEWS);
+        assertEquals(0, serverTiming.retries());
+
+        Thread.sleep(5);
+        serverTiming.attemptStarted(ServerTiming.Phase.INFO);
+
+        assertEquals(1, serverTiming.retries());
+        assertTrue(serverTiming.nanos(ServerTiming.Phase.RETRY) >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(serverTiming.toHeaderValue().contains(";desc=\"1 Retried attempts\""));
+    }
+
+    @Test
+    void downstreamEntriesArePrefixedWithThePhase() {
+        var serverTiming = new ServerTiming();
+
+        serverTiming.addDownstream(ServerTiming.Phase.INFO, List.of("db;dur=3, cache;desc=\"hit, warm\""));
+        serverTiming.addDownstream(ServerTiming.Phase.REVIEWS, List.of("db;dur=7"));
+
+        assertEquals("info-db;dur=3, info-cache;desc=\"hit, warm\", reviews-db;dur=7", serverTiming.toHeaderValue());
+    }
+}
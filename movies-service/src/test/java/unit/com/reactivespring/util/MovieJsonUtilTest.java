@@ -0,0 +1,89 @@
+package com.reactivespring.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.ReviewsServerException;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieJsonUtilTest {
+
+    private static final String MOVIE_INFO = "{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005,"
+            + "\"cast\":[\"Christian Bale\",\"Michael Cane\"],\"release_date\":\"2005-06-15\"}";
+    private static final String REVIEW_1 = "{\"reviewId\":\"1\",\"movieInfoId\":1,\"comment\":\"Awesome Movie\",\"rating\":9.0}";
+    private static final String REVIEW_2 = "{\"reviewId\":\"2\",\"movieInfoId\":1,\"comment\":\"Excellent Movie\",\"rating\":8.0}";
+
+    private ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private DataBuffer buffer(String json) {
+        return bufferFactory.allocateBuffer().write(json, StandardCharsets.UTF_8);
+    }
+
+    private static String release(DataBuffer json) {
+        var text = json.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(json);
+        return text;
+    }
+
+    @Test
+    void splicesMovieInfoAndReviews() throws Exception {
+        var movieInfoJson = buffer(MOVIE_INFO);
+        var reviewListJson = buffer("[" + REVIEW_1 + "," + REVIEW_2 + "]");
+
+        var movieJson = release(MovieJsonUtil.toMovieJson(objectMapper.getFactory(), movieInfoJson, reviewListJson));
+
+        assertEquals("{\"movieInfo\":" + MOVIE_INFO + ",\"reviewList\":[" + REVIEW_1 + "," + REVIEW_2 + "]}", movieJson);
+        var movie = objectMapper.readValue(movieJson, Movie.class);
+        assertEquals("Batman Begins", movie.getMovieInfo().getName());
+        assertEquals(2, movie.getReviewList().size());
+        assertFalse(((PooledDataBuffer) movieInfoJson).isAllocated());
+        assertFalse(((PooledDataBuffer) reviewListJson).isAllocated());
+    }
+
+    @Test
+    void splicesAnEmptyReviewListForNoReviews() {
+        var movieJson = release(MovieJsonUtil.toMovieJson(objectMapper.getFactory(), buffer(MOVIE_INFO), null));
+
+        assertEquals("{\"movieInfo\":" + MOVIE_INFO + ",\"reviewList\":[]}", movieJson);
+    }
+
+    @Test
+    void joinsReviewPayloadsIntoAnArray() {
+        var reviewListJson = MovieJsonUtil.toJsonArray(List.of(buffer(REVIEW_1), buffer(REVIEW_2)));
+
+        assertEquals("[" + REVIEW_1 + "," + REVIEW_2 + "]", release(reviewListJson));
+        assertNull(MovieJsonUtil.toJsonArray(List.of()));
+    }
+
+    @Test
+    void rejectsAMovieInfoThatIsNotAnObject() {
+        var movieInfoJson = buffer("MoviesInfo Service Unavailable");
+        var reviewListJson = buffer("[]");
+
+        assertThrows(MoviesInfoServerException.class,
+                () -> MovieJsonUtil.toMovieJson(objectMapper.getFactory(), movieInfoJson, reviewListJson));
+        assertFalse(((PooledDataBuffer) movieInfoJson).isAllocated());
+        assertFalse(((PooledDataBuffer) reviewListJson).isAllocated());
+    }
+
+    @Test
+    void rejectsReviewsThatAreNotAnArray() {
+        var movieInfoJson = buffer(MOVIE_INFO);
+
+        assertThrows(ReviewsServerException.class,
+                () -> MovieJsonUtil.toMovieJson(objectMapper.getFactory(), movieInfoJson, buffer(REVIEW_1)));
+        assertFalse(((PooledDataBuffer) movieInfoJson).isAllocated());
+    }
+}
@@ -0,0 +1,111 @@
+package com.reactivespring.util;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NdjsonUtilTest {
+
+    private NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private List<DataBuffer> received = new ArrayList<>();
+
+    private Flux<DataBuffer> body(String... chunks) {
+        return Flux.fromArray(chunks)
+                .map(chunk -> {
+                    var buffer = bufferFactory.allocateBuffer().write(chunk, StandardCharsets.UTF_8);
+                    received.add(buffer);
+                    return buffer;
+                });
+    }
+
+    private static String release(DataBuffer line) {
+        var text = line.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(line);
+        return text;
+    }
+
+    private void assertAllReleased() {
+        received.forEach(buffer -> assertFalse(((PooledDataBuffer) buffer).isAllocated()));
+    }
+
+    @Test
+    void splitsOnNewlinesAcrossAndWithinBuffers() {
+        var lines = NdjsonUtil.splitLines(body("{\"a\":1}\n{\"b\"", ":2}\n\n{\"c\"", ":3}\n"), 1024)
+                .map(NdjsonUtilTest::release);
+
+        StepVerifier.create(lines)
+                .expectNext("{\"a\":1}\n", "{\"b\":2}\n", "{\"c\":3}\n")
+                .verifyComplete();
+        assertAllReleased();
+    }
+
+    @Test
+    void terminatesALastLineWithoutNewline() {
+        var lines = NdjsonUtil.splitLines(body("{\"a\":1}\n{\"b\"", ":2}"), 1024)
+                .map(NdjsonUtilTest::release);
+
+        StepVerifier.create(lines)
+                .expectNext("{\"a\":1}\n", "{\"b\":2}\n")
+                .verifyComplete();
+        assertAllReleased();
+    }
+
+    @Test
+    void releasesHeldBuffersOnCancel() {
+        var lines = NdjsonUtil.splitLines(body("{\"a\":1}\n{\"b\":2}\n{\"c\"", ":3}\n"), 1024)
+                .map(NdjsonUtilTest::release)
+                .take(1);
+
+        StepVerifier.create(lines)
+                .expectNext("{\"a\":1}\n")
+                .verifyComplete();
+        assertAllReleased();
+    }
+
+    @Test
+    void rejectsLinesOverTheLimit() {
+        var lines = NdjsonUtil.splitLines(body("{\"a\":1}\n{\"b\"", ":\"a line that goes on", " and on\"}\n"), 16)
+                .map(NdjsonUtilTest::release);
+
+        StepVerifier.create(lines)
+                .expectNext("{\"a\":1}\n")
+                .expectError(DataBufferLimitException.class)
+                .verify();
+        assertAllReleased();
+    }
+
+    @Test
+    void rejectsALineOverTheLimitWithinOneBuffer() {
+        var lines = NdjsonUtil.splitLines(body("{\"a\":1}\n{\"b\":\"a line that goes on and on\"}\n{\"c\":3}\n"), 16)
+                .map(NdjsonUtilTest::release);
+
+        StepVerifier.create(lines)
+                .expectError(DataBufferLimitException.class)
+                .verify();
+        assertAllReleased();
+    }
+
+    @Test
+    void rejectsALineOverTheLimitOnceJoined() {
+        // each part is within the limit, the line they make is not
+        var lines = NdjsonUtil.splitLines(body("{\"b\":\"a line", " that goes on\"}\n"), 16)
+                .map(NdjsonUtilTest::release);
+
+        StepVerifier.create(lines)
+                .expectError(DataBufferLimitException.class)
+                .verify();
+        assertAllReleased();
+    }
+}
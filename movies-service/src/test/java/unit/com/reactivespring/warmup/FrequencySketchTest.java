@@ -0,0 +1,50 @@
+package com.reactivespring.warmup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test
+    void estimatesHowOftenAKeyWasSeen() {
+        var frequencySketch = new FrequencySketch(1024, Integer.MAX_VALUE);
+
+        for (int i = 0; i < 10; i++) {
+            frequencySketch.increment("1");
+        }
+        frequencySketch.increment("2");
+
+        assertEquals(10, frequencySketch.frequency("1"));
+        assertEquals(1, frequencySketch.frequency("2"));
+        assertEquals(0, frequencySketch.frequency("3"));
+    }
+
+    @Test
+    void neverUnderestimates() {
+        // far more keys than counters, so most of them collide
+        var frequencySketch = new FrequencySketch(16, Integer.MAX_VALUE);
+
+        for (int i = 0; i < 1000; i++) {
+            frequencySketch.increment(String.valueOf(i));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(frequencySketch.frequency(String.valueOf(i)) >= 1);
+        }
+    }
+
+    @Test
+    void halvesTheCountersOnceTheSampleIsFull() {
+        var frequencySketch = new FrequencySketch(1024, 8);
+
+        for (int i = 0; i < 7; i++) {
+            frequencySketch.increment("1");
+        }
+        assertEquals(7, frequencySketch.frequency("1"));
+
+        frequencySketch.increment("1");
+
+        assertEquals(4, frequencySketch.frequency("1"));
+    }
+}
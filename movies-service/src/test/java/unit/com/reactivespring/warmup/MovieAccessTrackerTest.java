@@ -0,0 +1,74 @@
+package com.reactivespring.warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieAccessTrackerTest {
+
+    @TempDir
+    Path snapshotDir;
+
+    private MovieAccessTracker tracker(int hottest) {
+        return new MovieAccessTracker(hottest, 1024, snapshotDir.resolve("hot-movies.txt").toString(),
+                Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    private static void request(MovieAccessTracker movieAccessTracker, String movieId, int times) {
+        for (int i = 0; i < times; i++) {
+            movieAccessTracker.record(movieId);
+        }
+    }
+
+    @Test
+    void hottestMoviesFirst() {
+        var movieAccessTracker = tracker(10);
+        request(movieAccessTracker, "1", 3);
+        request(movieAccessTracker, "2", 5);
+        request(movieAccessTracker, "3", 1);
+
+        assertEquals(List.of("2", "1", "3"), movieAccessTracker.hottest(10));
+        assertEquals(List.of("2", "1"), movieAccessTracker.hottest(2));
+    }
+
+    @Test
+    void keepsTheHottestWhenTheCandidatesAreFull() {
+        var movieAccessTracker = tracker(2);
+        request(movieAccessTracker, "hot", 50);
+        // one request each, enough to overflow the candidates several times
+        for (int i = 0; i < 100; i++) {
+            movieAccessTracker.record("cold" + i);
+        }
+
+        assertEquals("hot", movieAccessTracker.hottest(1).get(0));
+    }
+
+    @Test
+    void snapshotRoundTrip() throws Exception {
+        var movieAccessTracker = tracker(10);
+        request(movieAccessTracker, "1", 2);
+        request(movieAccessTracker, "2", 4);
+
+        movieAccessTracker.saveSnapshot();
+
+        assertEquals(List.of("2", "1"), Files.readAllLines(snapshotDir.resolve("hot-movies.txt")));
+        assertEquals(List.of("2", "1"), tracker(10).loadSnapshot());
+    }
+
+    @Test
+    void noSnapshotWithoutRequests() {
+        var movieAccessTracker = tracker(10);
+
+        movieAccessTracker.saveSnapshot();
+
+        assertFalse(Files.exists(snapshotDir.resolve("hot-movies.txt")));
+        assertTrue(movieAccessTracker.loadSnapshot().isEmpty());
+    }
+}
@@ -0,0 +1,20 @@
+package com.reactivespring.warmup;
+
+import com.reactivespring.client.MoviesInfoClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class MovieWarmupTest {
+
+    @Test
+    void rateMustBePositive() {
+        var moviesInfoClient = mock(MoviesInfoClient.class);
+        var movieAccessTracker = mock(MovieAccessTracker.class);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new MovieWarmup(moviesInfoClient, movieAccessTracker, new SimpleMeterRegistry(), 0));
+    }
+}
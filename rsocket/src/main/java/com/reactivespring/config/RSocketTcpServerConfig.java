@@ -0,0 +1,30 @@
+package com.reactivespring.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.rsocket.context.RSocketServerBootstrap;
+import org.springframework.boot.rsocket.netty.NettyRSocketServerFactory;
+import org.springframework.boot.rsocket.server.RSocketServer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+
+/**
+ * Spring Boot serves RSocket over a single transport, which is WebSocket on the
+ * WebFlux port (spring.rsocket.server.mapping-path). This adds a TCP server for
+ * the same @MessageMapping routes so clients can pick either transport. It
+ * listens on rsocket.tcp-port, 0 for any free port, and is left out without it.
+ */
+@Configuration
+@ConditionalOnProperty(name = "rsocket.tcp-port")
+public class RSocketTcpServerConfig {
+
+    @Bean
+    public RSocketServerBootstrap rSocketTcpServerBootstrap(RSocketMessageHandler messageHandler,
+                                                            @Value("${rsocket.tcp-port}") int port) {
+        var serverFactory = new NettyRSocketServerFactory();
+        serverFactory.setTransport(RSocketServer.Transport.TCP);
+        serverFactory.setPort(port);
+        return new RSocketServerBootstrap(serverFactory, messageHandler.responder());
+    }
+}
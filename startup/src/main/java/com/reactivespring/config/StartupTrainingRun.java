@@ -0,0 +1,55 @@
+package com.reactivespring.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Training run for the AppCDS archive (the appCdsArchive Gradle task). Once the
+ * application is ready it sends one request to each of startup.training-run.paths,
+ * so the classes on the request path are archived as well, and then exits, which
+ * is when the JVM writes the archive.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "startup.training-run.enabled", havingValue = "true")
+public class StartupTrainingRun implements ApplicationListener<ApplicationReadyEvent> {
+
+    private List<String> paths;
+
+    public StartupTrainingRun(@Value("${startup.training-run.paths:/actuator/health}") List<String> paths) {
+        this.paths = paths;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        var context = event.getApplicationContext();
+        var webClient = WebClient.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+        try {
+            Flux.fromIterable(paths)
+                    .concatMap(path -> webClient.get().uri(path)
+                            .retrieve()
+                            .toBodilessEntity()
+                            .doOnNext(response -> log.info("Training request {} : {}", path, response.getStatusCode()))
+                            // failed requests still load most of the request path
+                            .onErrorResume(ex -> {
+                                log.warn("Training request {} failed : {}", path, ex.getMessage());
+                                return Mono.empty();
+                            }))
+                    .timeout(Duration.ofSeconds(60))
+                    .blockLast();
+        } finally {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}